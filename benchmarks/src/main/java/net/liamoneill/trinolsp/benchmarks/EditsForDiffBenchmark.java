@@ -0,0 +1,74 @@
+package net.liamoneill.trinolsp.benchmarks;
+
+import name.fraser.neil.plaintext.diff_match_patch;
+import net.liamoneill.trinolsp.TokenAlignedEdits;
+import net.liamoneill.trinolsp.Utils;
+import net.liamoneill.trinolsp.sql.Formatter;
+import net.liamoneill.trinolsp.sql.Parser;
+import org.eclipse.lsp4j.TextEdit;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the edits turning a query as typed into its formatted version, as done by document formatting. The
+ * "script" size is about 1 MB of medium queries, formatted as a whole document.
+ *
+ * Formatting computes the edits with {@link TokenAlignedEdits}, which only falls back to {@link Utils#editsForDiff}
+ * when the token sequences differ. Both are measured, with diff_match_patch, which the edits used to be computed
+ * with, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditsForDiffBenchmark {
+
+    private static final int SCRIPT_CHARACTERS = 1 << 20;
+
+    @Param({"small", "medium", "huge", "script"})
+    private String query;
+
+    private String original;
+    private String formatted;
+
+    @Setup
+    public void setup() {
+        if (query.equals("script")) {
+            String statement = QueryCorpus.get("medium");
+            String formattedStatement = Formatter.format(Parser.parse(statement).getLeft());
+            StringBuilder originalBuilder = new StringBuilder();
+            StringBuilder formattedBuilder = new StringBuilder();
+            while (originalBuilder.length() < SCRIPT_CHARACTERS) {
+                originalBuilder.append(statement).append(";\n\n");
+                formattedBuilder.append(formattedStatement.strip()).append(";\n\n");
+            }
+            original = originalBuilder.toString();
+            formatted = formattedBuilder.toString();
+            return;
+        }
+        original = QueryCorpus.get(query);
+        formatted = Formatter.format(Parser.parse(original).getLeft());
+    }
+
+    @Benchmark
+    public List<TextEdit> tokenAlignedEdits() {
+        return TokenAlignedEdits.compute(original, formatted);
+    }
+
+    @Benchmark
+    public List<TextEdit> editsForDiff() {
+        return Utils.editsForDiff(original, formatted);
+    }
+
+    @Benchmark
+    public LinkedList<diff_match_patch.Diff> diffMatchPatch() {
+        diff_match_patch differ = new diff_match_patch();
+        differ.Diff_Timeout = 1;
+        return differ.diff_main(original, formatted);
+    }
+}
@@ -0,0 +1,33 @@
+package net.liamoneill.trinolsp.benchmarks;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.sql.Parser;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    private String query;
+
+    private String sql;
+
+    @Setup
+    public void setup() {
+        sql = QueryCorpus.get(query);
+    }
+
+    @Benchmark
+    public Either<Statement, ParsingException> parse() {
+        return Parser.parse(sql);
+    }
+}
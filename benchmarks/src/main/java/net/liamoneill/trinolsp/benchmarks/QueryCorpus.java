@@ -0,0 +1,59 @@
+package net.liamoneill.trinolsp.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The queries benchmarked at each size: a one line lookup, a typical dashboard query, and a generated query of the
+ * kind emitted by our semantic layer (a large IN list and a long chain of conjuncts).
+ */
+public final class QueryCorpus {
+
+    private static final int HUGE_IN_LIST_SIZE = 2_000;
+    private static final int HUGE_CONJUNCTS = 300;
+
+    private QueryCorpus() {
+    }
+
+    public static String get(String size) {
+        switch (size) {
+            case "small":
+                return load("small.sql");
+            case "medium":
+                return load("medium.sql");
+            case "huge":
+                return huge();
+            default:
+                throw new IllegalArgumentException("Unknown query size: " + size);
+        }
+    }
+
+    private static String load(String name) {
+        try (InputStream inputStream = QueryCorpus.class.getResourceAsStream("/queries/" + name)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Missing query resource: " + name);
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).strip();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String huge() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("select e.id, e.session_id, e.type\nfrom events as e\nwhere e.type in (");
+        for (int i = 0; i < HUGE_IN_LIST_SIZE; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append("'type_").append(i).append('\'');
+        }
+        builder.append(")");
+        for (int i = 0; i < HUGE_CONJUNCTS; i++) {
+            builder.append("\n  and e.attribute_").append(i).append(" = ").append(i);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package net.liamoneill.trinolsp.benchmarks;
+
+import io.trino.sql.tree.Node;
+import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.sql.EventViewRewriter;
+import net.liamoneill.trinolsp.sql.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewriteBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    private String query;
+
+    private Statement statement;
+
+    @Setup
+    public void setup() {
+        statement = Parser.parse(QueryCorpus.get(query)).getLeft();
+    }
+
+    @Benchmark
+    public Node rewrite() {
+        return EventViewRewriter.rewrite(statement);
+    }
+}
@@ -0,0 +1,40 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.benchmarks.QueryCorpus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lives in the sql package to reach the package-private {@link SqlFormatter}, so formatting can be measured with and
+ * without the verification done by {@link Formatter#format}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatterBenchmark {
+
+    @Param({"small", "medium", "huge"})
+    private String query;
+
+    private Statement statement;
+
+    @Setup
+    public void setup() {
+        statement = Parser.parse(QueryCorpus.get(query)).getLeft();
+    }
+
+    @Benchmark
+    public String format() {
+        return Formatter.format(statement);
+    }
+
+    @Benchmark
+    public String formatSql() {
+        return SqlFormatter.formatSql(statement);
+    }
+}
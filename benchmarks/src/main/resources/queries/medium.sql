@@ -0,0 +1,33 @@
+with pageviews as (
+    select e.session_id, e.profile_id, e.created_at, json_extract_scalar(e.properties, '$.url') as url
+    from events as e
+    where e.type = 'pageview' and e.created_at > date '2021-01-01'
+),
+orders_by_profile as (
+    select o.profile_id, count(*) as order_count, sum(o.total) as revenue
+    from orders as o
+    where o.status in ('paid', 'shipped', 'delivered')
+    group by o.profile_id
+    having sum(o.total) > 100
+)
+select
+    p.id,
+    p.email,
+    coalesce(obp.order_count, 0) as order_count,
+    case
+        when obp.revenue > 10000 then 'whale'
+        when obp.revenue > 1000 then 'regular'
+        else 'casual'
+    end as segment,
+    count(distinct pv.session_id) as sessions,
+    max(pv.created_at) as last_seen,
+    row_number() over (partition by p.country order by obp.revenue desc) as country_rank
+from profiles as p
+join pageviews as pv on pv.profile_id = p.id
+left join orders_by_profile as obp on obp.profile_id = p.id
+where p.deleted_at is null
+    and (p.country = 'IE' or p.country = 'GB' or p.country = 'US')
+    and pv.url like '%/checkout%'
+group by p.id, p.email, p.country, obp.order_count, obp.revenue
+order by order_count desc, last_seen desc
+limit 500
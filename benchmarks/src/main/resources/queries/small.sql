@@ -0,0 +1 @@
+select * from events as e where e.type = 'pageview'
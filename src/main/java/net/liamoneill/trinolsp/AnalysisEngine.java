@@ -0,0 +1,136 @@
+package net.liamoneill.trinolsp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.liamoneill.trinolsp.catalog.CatalogProvider;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state shared by every language server session in the process: the request executor, the diagnostics timer, the
+ * catalog metadata and the per-session limits. The parser and its statement cache are static and shared as well.
+ *
+ * Each session ({@link TrinoLanguageServer}) only keeps its own opened documents, so a websocket server costs one
+ * engine plus the documents of its clients, instead of one engine per browser tab.
+ */
+public class AnalysisEngine {
+
+    private static final AnalysisEngine SHARED = new AnalysisEngine(
+            RequestExecutor.fromSystemProperties(),
+            CatalogProvider.fromSystemProperties(),
+            SessionLimits.fromSystemProperties());
+
+    private final RequestExecutor requestExecutor;
+    private final CatalogProvider catalogProvider;
+    private final SessionLimits sessionLimits;
+    private final ScheduledExecutorService diagnosticsTimer;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    public AnalysisEngine(RequestExecutor requestExecutor, CatalogProvider catalogProvider, SessionLimits sessionLimits) {
+        this.requestExecutor = requestExecutor;
+        this.catalogProvider = catalogProvider;
+        this.sessionLimits = sessionLimits;
+        // Only waits out the debounce delay, the diagnostics themselves run on the request executor.
+        this.diagnosticsTimer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("trino-lsp-diagnostics-timer-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    public static AnalysisEngine getShared() {
+        return SHARED;
+    }
+
+    public SessionLimits getSessionLimits() {
+        return sessionLimits;
+    }
+
+    public RequestExecutor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    public CatalogProvider getCatalogProvider() {
+        return catalogProvider;
+    }
+
+    public ScheduledExecutorService getDiagnosticsTimer() {
+        return diagnosticsTimer;
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Counts a new session, unless the engine already serves {@link SessionLimits#getMaxSessions()} sessions.
+     */
+    void sessionStarted() {
+        int maxSessions = sessionLimits.getMaxSessions();
+        int sessions;
+        do {
+            sessions = activeSessions.get();
+            if (sessions >= maxSessions) {
+                throw new SessionLimitExceededException("Too many sessions: at most " + maxSessions + " can be open at once");
+            }
+        } while (!activeSessions.compareAndSet(sessions, sessions + 1));
+    }
+
+    void sessionEnded() {
+        activeSessions.decrementAndGet();
+    }
+
+    /**
+     * Limits on the number of sessions and on the resources a single session can use.
+     */
+    public static class SessionLimits {
+        private final int maxOpenDocuments;
+        private final int maxDocumentCharacters;
+        private final int maxSessions;
+
+        public SessionLimits(int maxOpenDocuments, int maxDocumentCharacters, int maxSessions) {
+            this.maxOpenDocuments = maxOpenDocuments;
+            this.maxDocumentCharacters = maxDocumentCharacters;
+            this.maxSessions = maxSessions;
+        }
+
+        public static SessionLimits fromSystemProperties() {
+            return new SessionLimits(
+                    Integer.getInteger("trinolsp.session.maxOpenDocuments", 100),
+                    Integer.getInteger("trinolsp.session.maxDocumentCharacters", 1 << 20),
+                    Integer.getInteger("trinolsp.session.maxSessions", 1000));
+        }
+
+        /**
+         * The number of documents a session can have open at once. Further documents are not tracked until others
+         * are closed.
+         */
+        public int getMaxOpenDocuments() {
+            return maxOpenDocuments;
+        }
+
+        /**
+         * The size above which a document is tracked but not analyzed.
+         */
+        public int getMaxDocumentCharacters() {
+            return maxDocumentCharacters;
+        }
+
+        /**
+         * The number of sessions the engine serves at once. Further sessions are refused until others are closed.
+         */
+        public int getMaxSessions() {
+            return maxSessions;
+        }
+    }
+
+    /**
+     * Thrown when a session is started on an engine that already serves as many sessions as it allows.
+     */
+    public static class SessionLimitExceededException extends IllegalStateException {
+        public SessionLimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package net.liamoneill.trinolsp;
 
-import net.liamoneill.trinolsp.sql.Formatter;
-import net.liamoneill.trinolsp.sql.Parser;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.slf4j.Logger;
@@ -22,9 +20,6 @@ public class CodeActionsRunner {
 
     public CompletableFuture<List<Either<Command, CodeAction>>> compute(CodeActionParams params) {
         String documentUri = params.getTextDocument().getUri();
-        String text = trinoLanguageServer.getTextDocumentService()
-                .getOpenedDocument(documentUri)
-                .getText();
 
         LOGGER.info("Computing code actions for {}", params.getContext().getDiagnostics());
 
@@ -35,7 +30,9 @@ public class CodeActionsRunner {
                 continue;
             }
 
-            List<TextEdit> edits = Utils.editsForDiff(text, text.stripTrailing() + " LIMIT 100");
+            // The diagnostic spans the offending statement, append the limit right after its last token.
+            Position statementEnd = diagnostics.getRange().getEnd();
+            List<TextEdit> edits = Collections.singletonList(new TextEdit(new Range(statementEnd, statementEnd), " LIMIT 100"));
             Map<String, List<TextEdit>> workspaceEdits = Collections.singletonMap(documentUri, edits);
             CodeAction codeAction = new CodeAction("Limit the query to 100 results");
             codeAction.setEdit(new WorkspaceEdit(workspaceEdits));
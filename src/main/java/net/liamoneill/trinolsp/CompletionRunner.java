@@ -1,28 +1,25 @@
 package net.liamoneill.trinolsp;
 
-import com.google.common.base.CharMatcher;
-import io.trino.sql.parser.ParsingException;
-import io.trino.sql.tree.Statement;
-import net.liamoneill.trinolsp.sql.Parser;
-import org.checkerframework.checker.units.qual.C;
+import io.trino.sql.parser.SqlBaseParser;
+import net.liamoneill.trinolsp.catalog.CatalogIndex;
+import net.liamoneill.trinolsp.completion.CodeCompletionCore;
+import net.liamoneill.trinolsp.completion.SqlCompletion;
+import net.liamoneill.trinolsp.completion.SqlVocabulary;
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import net.liamoneill.trinolsp.sql.ParsedScript;
+import net.liamoneill.trinolsp.sql.ParsedStatement;
 import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.CompletionItemKind;
 import org.eclipse.lsp4j.CompletionList;
 import org.eclipse.lsp4j.CompletionParams;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class CompletionRunner {
 
-    private static final Collection<String> KNOWN_TABLES = Collections.unmodifiableList(Arrays.asList(
-            "profiles",
-            "events",
-            "orders",
-            "carts",
-            "returns"));
+    private static final int MAX_COMPLETIONS = 50;
 
     private final TrinoLanguageServer trinoLanguageServer;
 
@@ -31,88 +28,125 @@ public class CompletionRunner {
     }
 
     public CompletableFuture<Either<List<CompletionItem>, CompletionList>> compute(CompletionParams params) {
-        String text = trinoLanguageServer.getTextDocumentService()
-                .getOpenedDocument(params.getTextDocument().getUri())
-                .getText();
+        String uri = params.getTextDocument().getUri();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(uri);
+        if (document == null) {
+            return CompletableFuture.completedFuture(Either.forLeft(Collections.emptyList()));
+        }
+        CatalogIndex catalog = trinoLanguageServer.getAnalysisEngine().getCatalogProvider().getIndex();
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.COMPLETION, () -> compute(document, catalog, params));
+    }
 
-        Either<Statement, ParsingException> parseResult = Parser.parse(text);
+    private static Either<List<CompletionItem>, CompletionList> compute(DocumentSnapshot document, CatalogIndex catalog, CompletionParams params) {
+        String text = document.getText();
+        int offset = document.getLineIndex().offsetAt(params.getPosition());
+        String prefix = wordBefore(text, offset);
+        int wordStart = offset - prefix.length();
+
+        // Complete the statement under the cursor, or the start of a new statement when there is none.
+        int statementStart = statementStart(document.getParsedScript(), wordStart);
+        CodeCompletionCore.Candidates candidates = SqlCompletion.candidatesAfter(text.substring(statementStart, wordStart));
+
+        List<CompletionItem> items = new ArrayList<>();
+        if (candidates.hasRuleWithin(SqlBaseParser.RULE_identifier, SqlBaseParser.RULE_relationPrimary)) {
+            // A table name is `table`, `schema.table` or `catalog.schema.table`: after one qualifier the word is
+            // either a table of that schema or a schema of that catalog
+            List<String> qualifier = qualifierBefore(text, wordStart);
+            List<CatalogIndex.Table> tables = switch (qualifier.size()) {
+                case 0 -> catalog.rankedTables(null, null, prefix, MAX_COMPLETIONS);
+                case 1 -> catalog.rankedTables(null, qualifier.get(0), prefix, MAX_COMPLETIONS);
+                case 2 -> catalog.rankedTables(qualifier.get(0), qualifier.get(1), prefix, MAX_COMPLETIONS);
+                default -> List.of();
+            };
+            for (CatalogIndex.Table table : tables) {
+                CompletionItem item = completionItem(table.getName(), CompletionItemKind.Class);
+                item.setDetail(table.getQualifiedName());
+                items.add(item);
+            }
+            if (qualifier.size() == 1) {
+                for (String schema : catalog.rankedSchemas(qualifier.get(0), prefix, MAX_COMPLETIONS)) {
+                    CompletionItem item = completionItem(schema, CompletionItemKind.Module);
+                    item.setDetail(qualifier.get(0) + "." + schema);
+                    items.add(item);
+                }
+            }
+        }
+        if (candidates.hasRuleWithin(SqlBaseParser.RULE_identifier, SqlBaseParser.RULE_primaryExpression)) {
+            for (String column : catalog.rankedColumns(prefix, MAX_COMPLETIONS)) {
+                items.add(completionItem(column, CompletionItemKind.Field));
+            }
+            for (String function : SqlVocabulary.functions(prefix, MAX_COMPLETIONS)) {
+                items.add(completionItem(function, CompletionItemKind.Function));
+            }
+        }
 
-        List<CompletionItem> completionItems = new ArrayList<>();
-        if (parseResult.isRight()) {
-            for (String suggestion : suggestionsFromParsingException(parseResult.getRight(), text)) {
-                completionItems.add(new CompletionItem(suggestion));
+        Set<String> expectedKeywords = new HashSet<>();
+        for (int tokenType : candidates.getTokens()) {
+            String keyword = SqlVocabulary.keyword(tokenType);
+            if (keyword != null) {
+                expectedKeywords.add(keyword);
             }
         }
+        for (String keyword : SqlVocabulary.keywords(prefix, MAX_COMPLETIONS, expectedKeywords)) {
+            items.add(completionItem(keyword, CompletionItemKind.Keyword));
+        }
 
-        return CompletableFuture.completedFuture(Either.forLeft(completionItems));
+        return Either.forRight(rankedCompletionList(items));
     }
 
-    private static Collection<String> suggestionsFromParsingException(ParsingException e, String sql)
-    {
-        String errorMessage = e.getErrorMessage();
-
-        Collection<String> suggestions = Collections.emptyList();
+    /**
+     * Returns the start of the statement an offset is in or directly follows. Text after a `;` is ignored by
+     * {@link SqlCompletion}, so the statement may have ended before the offset.
+     */
+    private static int statementStart(ParsedScript script, int offset) {
+        return script.statementAtOrBefore(offset)
+                .map(ParsedStatement::getStartOffset)
+                .orElse(offset);
+    }
 
-        if (errorMessage.startsWith("mismatched input '<EOF>'. Expecting: ")) {
-            suggestions = suggestionsFromEofError(errorMessage, sql);
-        } else if (errorMessage.matches("^mismatched input '.*'\\. Expecting: .+")) {
-            suggestions = suggestionsFromMismatchedInputError(errorMessage);
+    /**
+     * Returns the names qualifying the word starting at an offset, outermost first, e.g. the catalog and schema for
+     * "hive.web.ev". The list is empty if the word is not qualified.
+     */
+    private static List<String> qualifierBefore(String text, int wordStart) {
+        List<String> qualifier = new ArrayList<>();
+        int end = wordStart;
+        while (end > 0 && text.charAt(end - 1) == '.') {
+            String name = wordBefore(text, end - 1);
+            if (name.isEmpty()) {
+                break;
+            }
+            qualifier.add(name);
+            end -= name.length() + 1;
         }
+        Collections.reverse(qualifier);
+        return qualifier;
+    }
 
-        return suggestions;
+    private static CompletionItem completionItem(String label, CompletionItemKind kind) {
+        CompletionItem item = new CompletionItem(label);
+        item.setKind(kind);
+        return item;
     }
 
-    private static Collection<String> suggestionsFromMismatchedInputError(String errorMessage)
-    {
-        String[] expectingTokens = errorMessage.replaceFirst("^mismatched input '.*'\\. Expecting: ", "")
-                .split(", ");
-
-        return Arrays.stream(expectingTokens)
-                .sorted((t1, t2) -> {
-                    if (t1.startsWith("<") && !t2.startsWith("<")) {
-                        return -1;
-                    }
-                    if (!t1.startsWith("<") && t2.startsWith("<")) {
-                        return 1;
-                    }
-                    return t1.compareTo(t2);
-                })
-                .flatMap(token -> token.equals("<query>")
-                        ? Stream.of("SELECT", "WITH")
-                        : Stream.of(token))
-                .map(token -> {
-                    token = CharMatcher.is('\'').trimLeadingFrom(token);
-                    token = CharMatcher.is('\'').trimTrailingFrom(token);
-                    return token;
-                })
-                .collect(Collectors.toList());
+    /**
+     * Returns at most {@link #MAX_COMPLETIONS} items, sorted by clients in the order given.
+     */
+    private static CompletionList rankedCompletionList(List<CompletionItem> items) {
+        List<CompletionItem> ranked = items.size() > MAX_COMPLETIONS ? items.subList(0, MAX_COMPLETIONS) : items;
+        for (int i = 0; i < ranked.size(); i++) {
+            ranked.get(i).setSortText(String.format("%04d", i));
+        }
+        // Incomplete, as the client must ask again when the prefix changes to get the best matches for the new one
+        return new CompletionList(true, new ArrayList<>(ranked));
     }
 
-    private static Collection<String> suggestionsFromEofError(String errorMessage, String sql)
-    {
-        String[] expectingTokens = errorMessage
-                .replace("mismatched input '<EOF>'. Expecting: ", "")
-                .split(", ");
-
-        return Arrays.stream(expectingTokens)
-                .sorted((t1, t2) -> {
-                    if (t1.startsWith("<") && !t2.startsWith("<")) {
-                        return -1;
-                    }
-                    if (!t1.startsWith("<") && t2.startsWith("<")) {
-                        return 1;
-                    }
-                    return t1.compareTo(t2);
-                })
-                .map(token -> {
-                    token = CharMatcher.is('\'').trimLeadingFrom(token);
-                    token = CharMatcher.is('\'').trimTrailingFrom(token);
-                    return token;
-                })
-                .flatMap(token -> token.equals("<identifier>") && (
-                        sql.trim().toUpperCase().endsWith("FROM") || sql.trim().toUpperCase().endsWith("JOIN"))
-                        ? KNOWN_TABLES.stream()
-                        : Stream.of(token))
-                .collect(Collectors.toList());
+    private static String wordBefore(String text, int offset) {
+        int start = offset;
+        while (start > 0 && (Character.isLetterOrDigit(text.charAt(start - 1)) || text.charAt(start - 1) == '_')) {
+            start--;
+        }
+        return text.substring(start, offset);
     }
 }
@@ -2,14 +2,18 @@ package net.liamoneill.trinolsp;
 
 import io.trino.sql.parser.ParsingException;
 import io.trino.sql.tree.*;
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import net.liamoneill.trinolsp.sql.ParseTimeoutException;
+import net.liamoneill.trinolsp.sql.ParsedStatement;
 import net.liamoneill.trinolsp.sql.Parser;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 public class DiagnosticRunner {
     private final TrinoLanguageServer trinoLanguageServer;
@@ -19,61 +23,93 @@ public class DiagnosticRunner {
     }
 
     public void compute(DidSaveTextDocumentParams params) {
-        String text = retrieveFullText(params);
-        computeDiagnostics(text, trinoLanguageServer.getTextDocumentService().getOpenedDocument(params.getTextDocument().getUri()));
+        schedule(params.getTextDocument().getUri());
     }
 
     public void compute(DidChangeTextDocumentParams params) {
-        String text = params.getContentChanges().get(0).getText();
-        computeDiagnostics(text, trinoLanguageServer.getTextDocumentService().getOpenedDocument(params.getTextDocument().getUri()));
+        schedule(params.getTextDocument().getUri());
     }
 
     public void compute(DidOpenTextDocumentParams params) {
-        String text = params.getTextDocument().getText();
-        computeDiagnostics(text, params.getTextDocument());
+        schedule(params.getTextDocument().getUri());
     }
 
-    public void computeDiagnostics(String sql, TextDocumentItem documentItem) {
-        String uri = documentItem.getUri();
-        CompletableFuture.runAsync(() -> {
-            Either<Statement, ParsingException> parseResult = Parser.parse(sql);
-            List<Diagnostic> diagnostics = Collections.emptyList();
-
-            if (parseResult.isLeft()) {
-                Statement statement = parseResult.getLeft();
-
-                if (statement instanceof Query && ((Query) statement).getQueryBody() instanceof QuerySpecification) {
-                    QuerySpecification querySpecification = (QuerySpecification) ((Query) statement).getQueryBody();
-
-                    if (querySpecification.getWhere().isEmpty()
-                            && querySpecification.getLimit().isEmpty()
-                            && querySpecification.getFrom().isPresent()) {
-
-                        Relation relation = querySpecification.getFrom().get();
-                        if ((relation instanceof Table) && isLargeTable((Table) relation)) {
-                            Position start = new Position(0, 0);
-                            Position end = Utils.positionAt(sql, sql.length());
-                            Range range = new Range(start, end);
-
-                            Diagnostic diagnostic = new Diagnostic(range,
-                                    "Selecting all results from a large table",
-                                    DiagnosticSeverity.Warning,
-                                    "Query Engine");
-                            diagnostic.setData(1);
-                            diagnostics = Collections.singletonList(diagnostic);
-                        }
+    private void schedule(String uri) {
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getOpenedDocument(uri);
+        if (document != null) {
+            trinoLanguageServer.getDiagnosticsScheduler().schedule(document);
+        }
+    }
+
+    public List<Diagnostic> computeDiagnostics(DocumentSnapshot document) {
+        return computeDiagnostics(document, () -> false);
+    }
+
+    /**
+     * Computes the diagnostics of a document, or returns null if they are cancelled before the last statement.
+     */
+    public List<Diagnostic> computeDiagnostics(DocumentSnapshot document, BooleanSupplier cancelled) {
+        if (!trinoLanguageServer.getTextDocumentService().isAnalyzable(document)) {
+            Position start = new Position(0, 0);
+            return Collections.singletonList(new Diagnostic(new Range(start, start),
+                    "Document is too large to analyze (" + document.getContent().length() + " characters)",
+                    DiagnosticSeverity.Information,
+                    "Trino LSP"));
+        }
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        for (ParsedStatement statement : document.getParsedScript().getStatements()) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            diagnostics.addAll(computeDiagnostics(statement));
+        }
+        return diagnostics;
+    }
+
+    private static List<Diagnostic> computeDiagnostics(ParsedStatement parsedStatement) {
+        Either<Statement, ParsingException> parseResult = parsedStatement.getParseResult();
+
+        if (parseResult.isLeft()) {
+            Statement statement = parseResult.getLeft();
+
+            if (statement instanceof Query && ((Query) statement).getQueryBody() instanceof QuerySpecification) {
+                QuerySpecification querySpecification = (QuerySpecification) ((Query) statement).getQueryBody();
+
+                if (querySpecification.getWhere().isEmpty()
+                        && querySpecification.getLimit().isEmpty()
+                        && querySpecification.getFrom().isPresent()) {
+
+                    Relation relation = querySpecification.getFrom().get();
+                    if ((relation instanceof Table) && isLargeTable((Table) relation)) {
+                        Diagnostic diagnostic = new Diagnostic(parsedStatement.getRange(),
+                                "Selecting all results from a large table",
+                                DiagnosticSeverity.Warning,
+                                "Query Engine");
+                        diagnostic.setData(1);
+                        return Collections.singletonList(diagnostic);
                     }
                 }
-            } else {
-                ParsingException error = parseResult.getRight();
-                Position errorPosition = new Position(error.getLineNumber() - 1, error.getColumnNumber());
-                Range errorRange = new Range(errorPosition, errorPosition);
-
-                diagnostics = Collections.singletonList(new Diagnostic(errorRange, error.getErrorMessage()));
             }
+            return Collections.emptyList();
+        }
 
-            trinoLanguageServer.getClient().publishDiagnostics(new PublishDiagnosticsParams(uri, diagnostics));
-        });
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        List<ParsingException> errors = parsedStatement.getRecoveredStatement().getErrors();
+        if (parseResult.getRight() instanceof ParseTimeoutException) {
+            // Too complex to parse in time: say so, and only report the errors the lexer can find
+            diagnostics.add(new Diagnostic(parsedStatement.getRange(),
+                    parseResult.getRight().getErrorMessage() + ", only lexical errors are reported",
+                    DiagnosticSeverity.Information,
+                    "Trino LSP"));
+            errors = Parser.lexicalErrors(parsedStatement.getSql());
+        }
+        for (ParsingException error : errors) {
+            Position errorPosition = parsedStatement.toDocumentPosition(error.getLineNumber(), error.getColumnNumber());
+            Range errorRange = new Range(errorPosition, errorPosition);
+            diagnostics.add(new Diagnostic(errorRange, error.getErrorMessage()));
+        }
+        return diagnostics;
     }
 
     private static String getTableName(Table table) {
@@ -85,15 +121,7 @@ public class DiagnosticRunner {
         return Objects.equals(getTableName(table), "events");
     }
 
-    private String retrieveFullText(DidSaveTextDocumentParams params) {
-        String text = params.getText();
-        if (text == null) {
-            text = trinoLanguageServer.getTextDocumentService().getOpenedDocument(params.getTextDocument().getUri()).getText();
-        }
-        return text;
-    }
-
     public void clear(String uri) {
-        trinoLanguageServer.getClient().publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.emptyList()));
+        trinoLanguageServer.getDiagnosticsScheduler().clear(uri);
     }
 }
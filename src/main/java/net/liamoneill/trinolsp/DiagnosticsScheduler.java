@@ -0,0 +1,153 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes and publishes diagnostics in the background, at most once per debounce window for each document.
+ *
+ * A change to a document cancels the diagnostics still pending for it: those waiting for the debounce window or for
+ * the executor never run, and a computation already running stops at the next statement. Results computed for a
+ * version which has since been superseded are dropped instead of being published, so the client never sees
+ * diagnostics out of order.
+ */
+public class DiagnosticsScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiagnosticsScheduler.class);
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = Long.getLong("trinolsp.diagnostics.debounceMillis", 250);
+
+    private final TrinoLanguageServer trinoLanguageServer;
+    private final ScheduledExecutorService timer;
+    private final RequestExecutor requestExecutor;
+    private final long debounceMillis;
+
+    private final Map<String, Task> pending = new ConcurrentHashMap<>();
+    private final Map<String, Integer> publishedVersions = new ConcurrentHashMap<>();
+
+    public DiagnosticsScheduler(TrinoLanguageServer trinoLanguageServer) {
+        // The executors belong to the shared engine, so websocket sessions do not each start their own threads.
+        this(trinoLanguageServer,
+                trinoLanguageServer.getAnalysisEngine().getDiagnosticsTimer(),
+                trinoLanguageServer.getAnalysisEngine().getRequestExecutor(),
+                DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    public DiagnosticsScheduler(TrinoLanguageServer trinoLanguageServer, ScheduledExecutorService timer, RequestExecutor requestExecutor, long debounceMillis) {
+        this.trinoLanguageServer = trinoLanguageServer;
+        this.timer = timer;
+        this.requestExecutor = requestExecutor;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public void schedule(DocumentSnapshot document) {
+        Task task = new Task();
+        Task superseded = pending.put(document.getUri(), task);
+        if (superseded != null) {
+            superseded.cancel();
+        }
+        task.start(document);
+    }
+
+    public void clear(String uri) {
+        Task superseded = pending.remove(uri);
+        if (superseded != null) {
+            superseded.cancel();
+        }
+        publishedVersions.remove(uri);
+        trinoLanguageServer.getClient().publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.emptyList()));
+    }
+
+    /**
+     * Cancels the pending diagnostics of every document, without publishing anything (the client is gone).
+     */
+    public void cancelAll() {
+        for (Task task : pending.values()) {
+            task.cancel();
+        }
+        pending.clear();
+        publishedVersions.clear();
+    }
+
+    private void run(DocumentSnapshot document, Task task) {
+        String uri = document.getUri();
+        int version = document.getVersion();
+        if (task.isCancelled() || isOutdated(uri, version)) {
+            return;
+        }
+
+        List<Diagnostic> diagnostics;
+        try {
+            diagnostics = new DiagnosticRunner(trinoLanguageServer).computeDiagnostics(document, task::isCancelled);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to compute diagnostics for {} version {}", uri, version, e);
+            return;
+        }
+        if (diagnostics == null) {
+            LOGGER.debug("Stopped computing diagnostics for superseded version {} of {}", version, uri);
+            return;
+        }
+
+        synchronized (this) {
+            Integer published = publishedVersions.get(uri);
+            if (isOutdated(uri, version) || (published != null && published > version)) {
+                LOGGER.debug("Dropping diagnostics for outdated version {} of {}", version, uri);
+                return;
+            }
+            publishedVersions.put(uri, version);
+            trinoLanguageServer.getClient().publishDiagnostics(new PublishDiagnosticsParams(uri, diagnostics, version));
+        }
+    }
+
+    /**
+     * The diagnostics of one document version, from the debounce timer to the end of their computation.
+     */
+    private class Task {
+        private volatile boolean cancelled;
+        private volatile Future<?> timerFuture;
+        private volatile CompletableFuture<Void> executorFuture;
+
+        void start(DocumentSnapshot document) {
+            timerFuture = timer.schedule(() -> {
+                executorFuture = requestExecutor.execute(RequestExecutor.RequestType.DIAGNOSTICS, () -> run(document, this));
+                if (cancelled) {
+                    executorFuture.cancel(false);
+                }
+            }, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> timerFuture = this.timerFuture;
+            if (timerFuture != null) {
+                timerFuture.cancel(false);
+            }
+            // Only stops work still waiting for the executor, running work checks isCancelled between statements
+            CompletableFuture<Void> executorFuture = this.executorFuture;
+            if (executorFuture != null) {
+                executorFuture.cancel(false);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private boolean isOutdated(String uri, int version) {
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getOpenedDocument(uri);
+        return document == null || document.getVersion() != version;
+    }
+}
@@ -1,18 +1,30 @@
 package net.liamoneill.trinolsp;
 
-import io.trino.sql.parser.ParsingException;
-import io.trino.sql.tree.Statement;
+import com.google.common.base.CharMatcher;
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
 import net.liamoneill.trinolsp.sql.Formatter;
-import net.liamoneill.trinolsp.sql.Parser;
+import net.liamoneill.trinolsp.sql.ParseTimeoutException;
+import net.liamoneill.trinolsp.sql.ParsedScript;
+import net.liamoneill.trinolsp.sql.ParsedStatement;
 import org.eclipse.lsp4j.DocumentFormattingParams;
+import org.eclipse.lsp4j.DocumentOnTypeFormattingParams;
+import org.eclipse.lsp4j.DocumentRangeFormattingParams;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.MessageType;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.TextEdit;
-import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageClient;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class FormatterRunner {
+    // Formatting rewrites the whole document and diffs it, larger documents are not formatted
+    private static final int MAX_CHARACTERS = Integer.getInteger("trinolsp.formatter.maxCharacters", 256 * 1024);
+
     private final TrinoLanguageServer trinoLanguageServer;
 
     public FormatterRunner(TrinoLanguageServer trinoLanguageServer) {
@@ -20,22 +32,123 @@ public class FormatterRunner {
     }
 
     public CompletableFuture<List<? extends TextEdit>> compute(DocumentFormattingParams params) {
-        String text = trinoLanguageServer.getTextDocumentService()
-                .getOpenedDocument(params.getTextDocument().getUri())
-                .getText();
+        String uri = params.getTextDocument().getUri();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(uri);
+        if (document == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        LanguageClient client = trinoLanguageServer.getClient();
+        if (document.getContent().length() > MAX_CHARACTERS) {
+            client.showMessage(new MessageParams(MessageType.Info, "Document is too large to format ("
+                    + document.getContent().length() + " characters, the limit is " + MAX_CHARACTERS + ")"));
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        // The edits must apply to the version the client formatted, so the snapshot is taken before going async.
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.FORMATTING, () -> compute(document, client));
+    }
 
-        Either<Statement, ParsingException> parseResult = Parser.parse(text);
-        if (parseResult.isRight()) {
-            // Cannot format a document that does not parse.
+    /**
+     * Formats the statements overlapping the range. Only those statements are formatted and diffed, so the cost does
+     * not depend on the size of the document.
+     */
+    public CompletableFuture<List<? extends TextEdit>> compute(DocumentRangeFormattingParams params) {
+        String uri = params.getTextDocument().getUri();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(uri);
+        if (document == null) {
             return CompletableFuture.completedFuture(Collections.emptyList());
         }
+        LanguageClient client = trinoLanguageServer.getClient();
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.FORMATTING,
+                        () -> formatStatements(document.getParsedScript().statementsIn(params.getRange()), client));
+    }
+
+    /**
+     * Formats the statement ended by a `;` which was just typed.
+     */
+    public CompletableFuture<List<? extends TextEdit>> compute(DocumentOnTypeFormattingParams params) {
+        String uri = params.getTextDocument().getUri();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(uri);
+        if (document == null || !";".equals(params.getCh())) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        LanguageClient client = trinoLanguageServer.getClient();
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.FORMATTING, () -> {
+                    int semicolonOffset = document.getLineIndex().offsetAt(params.getPosition()) - 1;
+                    return document.getParsedScript().statementBefore(semicolonOffset)
+                            .map(statement -> formatStatements(List.of(statement), client))
+                            .orElse(Collections.emptyList());
+                });
+    }
 
-        Statement statement = parseResult.getLeft();
-        String formattedSql = Formatter.format(statement);
+    private static List<? extends TextEdit> compute(DocumentSnapshot document, LanguageClient client) {
+        String text = document.getText();
 
-        List<TextEdit> edits = Utils.editsForDiff(text, formattedSql);
-        return CompletableFuture.completedFuture(edits);
+        ParsedScript script = document.getParsedScript();
+        for (ParsedStatement statement : script.getStatements()) {
+            if (statement.getParseResult().isRight() && statement.getParseResult().getRight() instanceof ParseTimeoutException) {
+                client.showMessage(new MessageParams(MessageType.Info, "Document not formatted, the statement at line "
+                        + (statement.getStart().getLine() + 1) + " is too complex: " + statement.getParseResult().getRight().getErrorMessage()));
+                return Collections.emptyList();
+            }
+        }
+        if (script.getStatements().isEmpty() || script.hasErrors()) {
+            // Cannot format a document that does not parse.
+            return Collections.emptyList();
+        }
+
+        String formattedSql = formatStatements(text, script.getStatements());
+
+        return TokenAlignedEdits.compute(text, formattedSql);
+    }
+
+    /**
+     * Replaces each statement with its formatted SQL, keeping the text between statements (separators and comments)
+     * as it is.
+     */
+    private static String formatStatements(String text, List<ParsedStatement> statements) {
+        StringBuilder builder = new StringBuilder(text.length());
+        int position = 0;
+        for (ParsedStatement statement : statements) {
+            builder.append(text, position, statement.getStartOffset());
+            String formattedStatement = Formatter.format(statement.getParseResult().getLeft());
+            builder.append(CharMatcher.is('\n').trimTrailingFrom(formattedStatement));
+            position = statement.getEndOffset();
+        }
+
+        String remainder = text.substring(position);
+        builder.append(remainder.isBlank() ? "\n" : remainder);
+        return builder.toString();
     }
 
+    /**
+     * Returns the edits formatting each of the statements, diffed against the statement text alone. Statements which
+     * do not parse are left as they are.
+     */
+    private static List<TextEdit> formatStatements(List<ParsedStatement> statements, LanguageClient client) {
+        List<TextEdit> edits = new ArrayList<>();
+        for (ParsedStatement statement : statements) {
+            if (statement.getParseResult().isRight()) {
+                if (statement.getParseResult().getRight() instanceof ParseTimeoutException) {
+                    client.showMessage(new MessageParams(MessageType.Info, "Statement at line " + (statement.getStart().getLine() + 1)
+                            + " not formatted, it is too complex: " + statement.getParseResult().getRight().getErrorMessage()));
+                }
+                continue;
+            }
+
+            String formattedStatement = CharMatcher.is('\n').trimTrailingFrom(Formatter.format(statement.getParseResult().getLeft()));
+            for (TextEdit edit : TokenAlignedEdits.compute(statement.getSql(), formattedStatement)) {
+                Range range = new Range(toDocumentPosition(statement, edit.getRange().getStart()),
+                        toDocumentPosition(statement, edit.getRange().getEnd()));
+                edits.add(new TextEdit(range, edit.getNewText()));
+            }
+        }
+        return edits;
+    }
 
+    private static Position toDocumentPosition(ParsedStatement statement, Position position) {
+        return statement.toDocumentPosition(position.getLine() + 1, position.getCharacter() + 1);
+    }
 }
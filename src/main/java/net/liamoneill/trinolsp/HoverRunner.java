@@ -1,11 +1,12 @@
 package net.liamoneill.trinolsp;
 
-import io.trino.sql.parser.ParsingException;
 import io.trino.sql.tree.*;
-import net.liamoneill.trinolsp.sql.Parser;
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import net.liamoneill.trinolsp.sql.ParsedScript;
+import net.liamoneill.trinolsp.sql.ParsedStatement;
 import org.eclipse.lsp4j.*;
-import org.eclipse.lsp4j.jsonrpc.messages.Either;
 
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 public class HoverRunner {
@@ -18,35 +19,44 @@ public class HoverRunner {
 
     public CompletableFuture<Hover> compute(HoverParams params) {
         String documentUri = params.getTextDocument().getUri();
-        String text = trinoLanguageServer.getTextDocumentService()
-                .getOpenedDocument(documentUri)
-                .getText();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(documentUri);
+        if (document == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.HOVER, () -> compute(document, params));
+    }
 
-        Either<Statement, ParsingException> parseResult = Parser.parse(text);
+    private static Hover compute(DocumentSnapshot document, HoverParams params) {
+        ParsedScript script = document.getParsedScript();
 
-        if (parseResult.isRight()) {
-            return CompletableFuture.completedFuture(null);
+        // Statements with syntax errors are hovered using what could be recovered of them
+        Optional<ParsedStatement> statement = script.statementAt(params.getPosition());
+        Optional<Statement> ast = statement.flatMap(parsed -> parsed.getRecoveredStatement().getStatement());
+        if (ast.isEmpty()) {
+            return null;
         }
 
-        HoverVisitor hoverVisitor = new HoverVisitor(params.getPosition());
-        hoverVisitor.process(parseResult.getLeft());
+        HoverVisitor hoverVisitor = new HoverVisitor(statement.get(), params.getPosition());
+        hoverVisitor.process(ast.get());
 
         if (hoverVisitor.getHoveredFunctionCall() != null) {
             FunctionCall hoveredFunctionCall = hoverVisitor.getHoveredFunctionCall();
             MarkupContent hoverContent = FunctionDocumentationRegistry.getDocumentation(hoveredFunctionCall.getName());
-            Hover hover = hoverContent != null ? new Hover(hoverContent) : null;
-            return CompletableFuture.completedFuture(hover);
+            return hoverContent != null ? new Hover(hoverContent) : null;
         }
 
-        return CompletableFuture.completedFuture(null);
+        return null;
     }
 
     public static class HoverVisitor extends DefaultTraversalVisitor<Void>
     {
+        private final ParsedStatement statement;
         private final Position hoverPosition;
         private Node hoveredNode = null;
 
-        public HoverVisitor(Position hoverPosition) {
+        public HoverVisitor(ParsedStatement statement, Position hoverPosition) {
+            this.statement = statement;
             this.hoverPosition = hoverPosition;
         }
 
@@ -69,8 +79,8 @@ public class HoverRunner {
             NodeLocation location = node.getLocation().get();
             String name = String.join(".", node.getName().getParts());
 
-            Position start = new Position(location.getLineNumber(), location.getColumnNumber());
-            Position end = new Position(location.getLineNumber(), location.getColumnNumber() + name.length());
+            Position start = statement.toDocumentPosition(location);
+            Position end = new Position(start.getLine(), start.getCharacter() + name.length());
 
             return new Range(start, end);
         }
@@ -1,6 +1,7 @@
 package net.liamoneill.trinolsp;
 
 import net.liamoneill.trinolsp.http.ApiRunner;
+import net.liamoneill.trinolsp.sql.Parser;
 import net.liamoneill.trinolsp.websocket.WebSocketRunner;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
 import org.eclipse.lsp4j.launch.LSPLauncher;
@@ -22,6 +23,11 @@ public class Main {
     public static void main(String[] args) {
         List<String> arguments = Arrays.asList(args);
 
+        // Before serving anything, so the first requests do not wait for ANTLR to build its DFA
+        if (Boolean.parseBoolean(System.getProperty("trinolsp.parser.warmUp", "true"))) {
+            Parser.warmUp();
+        }
+
         if (arguments.contains(HTTP_PARAMETER)) {
             String hostname = extractParameterValue(arguments, HTTP_HOSTNAME_PARAMETER);
             int port = extractPort(arguments, HTTP_PORT_PARAMETER);
@@ -0,0 +1,276 @@
+package net.liamoneill.trinolsp;
+
+import java.util.Arrays;
+
+/**
+ * Myers' O(ND) difference algorithm over sequences of int ids, in its linear space form: the middle snake of the edit
+ * script is found by searching forwards and backwards at the same time, and the two halves around it are diffed
+ * recursively.
+ *
+ * O(ND) is too slow when a large text has many differences (e.g. a whole script being reformatted), so large ranges
+ * are first split the way patience diff does: the ids occurring exactly once in both sequences are matched, and Myers
+ * only runs between the longest increasing run of those anchors. The diff is then not always the smallest one, but
+ * it is found in close to linear time.
+ *
+ * Ids must be small non-negative ints, as they index the scratch arrays. Those arrays are allocated once and shared
+ * by every step of the recursion. The result is a flat array of hunks, four ints each: the [start, end) range
+ * replaced in the first sequence, and the [start, end) range replacing it in the second. Hunks are in order and
+ * never touch.
+ */
+public final class MyersDiff {
+
+    // Ranges at least this long are split on their unique common ids before running Myers
+    private static final int MIN_ANCHORED_LENGTH = 256;
+
+    private final int[] a;
+    private final int[] b;
+    private final long deadlineNanos;
+    // Furthest reaching x on each diagonal, searching forwards and backwards (from the ends of both sequences)
+    private final int[] forward;
+    private final int[] backward;
+    // Occurrences and last position of each id, within the range being anchored
+    private final int[] aCounts;
+    private final int[] bCounts;
+    private final int[] bPositions;
+    // The middle snake found by the last search: its start and end
+    private int snakeStartX;
+    private int snakeStartY;
+    private int snakeEndX;
+    private int snakeEndY;
+
+    private int[] hunks = new int[64];
+    private int size;
+
+    private MyersDiff(int[] a, int[] b, int maxEdits, int maxId, long deadlineNanos) {
+        this.a = a;
+        this.b = b;
+        this.deadlineNanos = deadlineNanos;
+        this.forward = new int[2 * maxEdits + 3];
+        this.backward = new int[2 * maxEdits + 3];
+        this.aCounts = new int[maxId + 1];
+        this.bCounts = new int[maxId + 1];
+        this.bPositions = new int[maxId + 1];
+    }
+
+    /**
+     * Returns the hunks turning the first sequence into the second. Once the timeout has passed, the remaining
+     * differences are reported as coarser hunks rather than searched for the smallest ones.
+     */
+    public static int[] diff(int[] a, int[] b, long timeoutMillis) {
+        int prefix = 0;
+        int maxPrefix = Math.min(a.length, b.length);
+        while (prefix < maxPrefix && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxPrefix - prefix && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        int maxId = 0;
+        for (int i = prefix; i < a.length - suffix; i++) {
+            maxId = Math.max(maxId, a[i]);
+        }
+        for (int i = prefix; i < b.length - suffix; i++) {
+            maxId = Math.max(maxId, b[i]);
+        }
+
+        int maxEdits = (a.length - prefix - suffix + b.length - prefix - suffix + 1) / 2;
+        MyersDiff diff = new MyersDiff(a, b, maxEdits, maxId, System.nanoTime() + timeoutMillis * 1_000_000);
+        diff.compare(prefix, a.length - suffix, prefix, b.length - suffix);
+        return Arrays.copyOf(diff.hunks, diff.size);
+    }
+
+    private void compare(int aStart, int aEnd, int bStart, int bEnd) {
+        while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+            aStart++;
+            bStart++;
+        }
+        while (aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd--;
+            bEnd--;
+        }
+        if (aStart == aEnd || bStart == bEnd) {
+            if (aStart != aEnd || bStart != bEnd) {
+                addHunk(aStart, aEnd, bStart, bEnd);
+            }
+            return;
+        }
+
+        if (aEnd - aStart + bEnd - bStart >= MIN_ANCHORED_LENGTH && compareAnchored(aStart, aEnd, bStart, bEnd)) {
+            return;
+        }
+        if (!findMiddleSnake(aStart, aEnd, bStart, bEnd)) {
+            addHunk(aStart, aEnd, bStart, bEnd);
+            return;
+        }
+        // Both ends of the middle snake are read before the first recursive call overwrites them
+        int startX = snakeStartX;
+        int startY = snakeStartY;
+        int endX = snakeEndX;
+        int endY = snakeEndY;
+        compare(aStart, startX, bStart, startY);
+        compare(endX, aEnd, endY, bEnd);
+    }
+
+    /**
+     * Diffs two ranges between their unique common ids, or returns false if they have none.
+     */
+    private boolean compareAnchored(int aStart, int aEnd, int bStart, int bEnd) {
+        for (int i = aStart; i < aEnd; i++) {
+            aCounts[a[i]]++;
+        }
+        for (int i = bStart; i < bEnd; i++) {
+            bCounts[b[i]]++;
+            bPositions[b[i]] = i;
+        }
+
+        // The anchors' positions in b, in the order of their positions in a
+        int[] anchorsB = new int[Math.min(aEnd - aStart, bEnd - bStart)];
+        int[] anchorsA = new int[anchorsB.length];
+        int anchorCount = 0;
+        for (int i = aStart; i < aEnd; i++) {
+            int id = a[i];
+            if (aCounts[id] == 1 && bCounts[id] == 1) {
+                anchorsA[anchorCount] = i;
+                anchorsB[anchorCount] = bPositions[id];
+                anchorCount++;
+            }
+        }
+
+        for (int i = aStart; i < aEnd; i++) {
+            aCounts[a[i]] = 0;
+        }
+        for (int i = bStart; i < bEnd; i++) {
+            bCounts[b[i]] = 0;
+        }
+        if (anchorCount == 0) {
+            return false;
+        }
+
+        // Patience sorting: the longest run of anchors in increasing order in both sequences
+        int[] tails = new int[anchorCount];
+        int[] previous = new int[anchorCount];
+        int length = 0;
+        for (int i = 0; i < anchorCount; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (anchorsB[tails[middle]] < anchorsB[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            length = Math.max(length, low + 1);
+        }
+        int[] run = new int[length];
+        for (int i = length - 1, anchor = tails[length - 1]; i >= 0; i--, anchor = previous[anchor]) {
+            run[i] = anchor;
+        }
+
+        int aPosition = aStart;
+        int bPosition = bStart;
+        for (int anchor : run) {
+            compare(aPosition, anchorsA[anchor], bPosition, anchorsB[anchor]);
+            aPosition = anchorsA[anchor] + 1;
+            bPosition = anchorsB[anchor] + 1;
+        }
+        compare(aPosition, aEnd, bPosition, bEnd);
+        return true;
+    }
+
+    /**
+     * Finds the middle snake of the edit script between two non-empty ranges which differ at both ends, or returns
+     * false if the deadline has passed.
+     */
+    private boolean findMiddleSnake(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int maxD = (n + m + 1) / 2;
+        // Diagonal k is at index k + offset
+        int offset = maxD + 1;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        for (int d = 0; d <= maxD; d++) {
+            if (System.nanoTime() > deadlineNanos) {
+                return false;
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+                    setSnake(aStart + startX, bStart + startY, aStart + x, bStart + y);
+                    return true;
+                }
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aEnd - 1 - x] == b[bEnd - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                    setSnake(aEnd - x, bEnd - y, aEnd - startX, bEnd - startY);
+                    return true;
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake found");
+    }
+
+    private void setSnake(int startX, int startY, int endX, int endY) {
+        snakeStartX = startX;
+        snakeStartY = startY;
+        snakeEndX = endX;
+        snakeEndY = endY;
+    }
+
+    private void addHunk(int aStart, int aEnd, int bStart, int bEnd) {
+        if (size > 0 && hunks[size - 3] == aStart && hunks[size - 1] == bStart) {
+            hunks[size - 3] = aEnd;
+            hunks[size - 1] = bEnd;
+            return;
+        }
+        if (size + 4 > hunks.length) {
+            hunks = Arrays.copyOf(hunks, hunks.length * 2);
+        }
+        hunks[size++] = aStart;
+        hunks[size++] = aEnd;
+        hunks[size++] = bStart;
+        hunks[size++] = bEnd;
+    }
+}
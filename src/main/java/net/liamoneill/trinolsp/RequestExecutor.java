@@ -0,0 +1,163 @@
+package net.liamoneill.trinolsp;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs the work of LSP and HTTP requests off the threads which receive them.
+ *
+ * By default every task gets its own virtual thread. Setting {@code trinolsp.executor=platform} uses a fixed pool of
+ * {@code trinolsp.executor.threads} platform threads instead. Either way each {@link RequestType} has its own
+ * concurrency limit ({@code trinolsp.executor.<type>.maxConcurrent}), so one kind of slow work (e.g. a burst of
+ * batch rewrites) cannot take every thread away from the others.
+ *
+ * The limit is applied before work reaches the executor: tasks over their type's limit wait in that type's own queue,
+ * and are handed to the executor as earlier tasks of the same type finish. Executor threads never block waiting for a
+ * permit, so the pool's queue only holds work which can start as soon as a thread is free.
+ */
+public class RequestExecutor {
+
+    public enum Mode {
+        VIRTUAL,
+        PLATFORM,
+    }
+
+    public enum RequestType {
+        COMPLETION(16),
+        HOVER(16),
+        SEMANTIC_TOKENS(16),
+        SYMBOLS(16),
+        FORMATTING(4),
+        DIAGNOSTICS(Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+        REWRITE(Runtime.getRuntime().availableProcessors()),
+        // Kept apart from REWRITE so that single rewrites do not queue behind the statements of a large batch
+        BATCH_REWRITE(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+        private final int defaultMaxConcurrent;
+
+        RequestType(int defaultMaxConcurrent) {
+            this.defaultMaxConcurrent = defaultMaxConcurrent;
+        }
+
+        private int getMaxConcurrent() {
+            String property = "trinolsp.executor." + name().toLowerCase(Locale.ENGLISH) + ".maxConcurrent";
+            return Math.max(1, Integer.getInteger(property, defaultMaxConcurrent));
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Map<RequestType, TypeQueue> queues = new EnumMap<>(RequestType.class);
+
+    public RequestExecutor(Mode mode, int platformThreads) {
+        this(mode, platformThreads, new EnumMap<>(RequestType.class));
+    }
+
+    /**
+     * Creates an executor overriding the concurrency limit of some request types.
+     */
+    RequestExecutor(Mode mode, int platformThreads, Map<RequestType, Integer> maxConcurrent) {
+        this.executor = switch (mode) {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                    .name("trino-lsp-request-", 0)
+                    .factory());
+            case PLATFORM -> Executors.newFixedThreadPool(platformThreads, Thread.ofPlatform()
+                    .name("trino-lsp-request-", 0)
+                    .daemon(true)
+                    .factory());
+        };
+        for (RequestType type : RequestType.values()) {
+            queues.put(type, new TypeQueue(maxConcurrent.getOrDefault(type, type.getMaxConcurrent())));
+        }
+    }
+
+    public static RequestExecutor fromSystemProperties() {
+        Mode mode = Mode.valueOf(System.getProperty("trinolsp.executor", Mode.VIRTUAL.name()).toUpperCase(Locale.ENGLISH));
+        int platformThreads = Integer.getInteger("trinolsp.executor.threads", Runtime.getRuntime().availableProcessors() * 2);
+        return new RequestExecutor(mode, platformThreads);
+    }
+
+    public int getMaxConcurrent(RequestType type) {
+        return queues.get(type).maxConcurrent;
+    }
+
+    /**
+     * Runs work once its type is under its concurrency limit. Cancelling the returned future before the work started
+     * means it never runs.
+     */
+    public <T> CompletableFuture<T> submit(RequestType type, Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        TypeQueue queue = queues.get(type);
+        queue.offer(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(work.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<Void> execute(RequestType type, Runnable work) {
+        return submit(type, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * The tasks of one type waiting for one of its permits.
+     */
+    private class TypeQueue {
+        private final int maxConcurrent;
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+        TypeQueue(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        void offer(Runnable task) {
+            synchronized (this) {
+                if (running >= maxConcurrent) {
+                    waiting.add(task);
+                    return;
+                }
+                running++;
+            }
+            dispatch(task);
+        }
+
+        private void dispatch(Runnable task) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    next();
+                }
+            });
+        }
+
+        private void next() {
+            Runnable task;
+            synchronized (this) {
+                task = waiting.poll();
+                if (task == null) {
+                    running--;
+                    return;
+                }
+            }
+            // The permit passes to the next task of the same type
+            dispatch(task);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package net.liamoneill.trinolsp;
+
+import com.google.common.primitives.Ints;
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import net.liamoneill.trinolsp.sql.SemanticTokenizer;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.SemanticTokensDelta;
+import org.eclipse.lsp4j.SemanticTokensDeltaParams;
+import org.eclipse.lsp4j.SemanticTokensEdit;
+import org.eclipse.lsp4j.SemanticTokensLegend;
+import org.eclipse.lsp4j.SemanticTokensParams;
+import org.eclipse.lsp4j.SemanticTokensServerFull;
+import org.eclipse.lsp4j.SemanticTokensWithRegistrationOptions;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves semantic tokens for syntax highlighting, computed from the lexer alone and cached per document version.
+ *
+ * The last result sent for each document is kept for the session, so that a delta request only sends the part of
+ * the token array which changed since then.
+ */
+public class SemanticTokensRunner {
+
+    private final TrinoLanguageServer trinoLanguageServer;
+    private final Map<String, Result> previousResults = new ConcurrentHashMap<>();
+    private final AtomicLong resultIds = new AtomicLong();
+
+    public SemanticTokensRunner(TrinoLanguageServer trinoLanguageServer) {
+        this.trinoLanguageServer = trinoLanguageServer;
+    }
+
+    public static SemanticTokensWithRegistrationOptions getCapabilities() {
+        SemanticTokensWithRegistrationOptions options = new SemanticTokensWithRegistrationOptions(
+                new SemanticTokensLegend(SemanticTokenizer.TOKEN_TYPES, Collections.emptyList()));
+        options.setFull(Either.forRight(new SemanticTokensServerFull(true)));
+        return options;
+    }
+
+    public CompletableFuture<SemanticTokens> full(SemanticTokensParams params) {
+        String uri = params.getTextDocument().getUri();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getOpenedDocument(uri);
+        if (document == null) {
+            return CompletableFuture.completedFuture(new SemanticTokens(Collections.emptyList()));
+        }
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.SEMANTIC_TOKENS, () -> {
+                    Result result = remember(uri, document.getSemanticTokens());
+                    return new SemanticTokens(result.id, Ints.asList(result.data));
+                });
+    }
+
+    public CompletableFuture<Either<SemanticTokens, SemanticTokensDelta>> delta(SemanticTokensDeltaParams params) {
+        String uri = params.getTextDocument().getUri();
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getOpenedDocument(uri);
+        if (document == null) {
+            return CompletableFuture.completedFuture(Either.forLeft(new SemanticTokens(Collections.emptyList())));
+        }
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.SEMANTIC_TOKENS, () -> {
+                    Result previous = previousResults.get(uri);
+                    Result result = remember(uri, document.getSemanticTokens());
+                    if (previous == null || !previous.id.equals(params.getPreviousResultId())) {
+                        // The client's tokens are not the last ones sent, it needs them all
+                        return Either.forLeft(new SemanticTokens(result.id, Ints.asList(result.data)));
+                    }
+                    return Either.forRight(new SemanticTokensDelta(edits(previous.data, result.data), result.id));
+                });
+    }
+
+    private Result remember(String uri, int[] data) {
+        Result result = new Result(String.valueOf(resultIds.incrementAndGet()), data);
+        previousResults.put(uri, result);
+        return result;
+    }
+
+    /**
+     * Returns the single edit replacing the part of the previous tokens which differs from the current ones, or no
+     * edit if they are equal.
+     */
+    static List<SemanticTokensEdit> edits(int[] previous, int[] current) {
+        int prefix = 0;
+        int maxPrefix = Math.min(previous.length, current.length);
+        while (prefix < maxPrefix && previous[prefix] == current[prefix]) {
+            prefix++;
+        }
+        if (prefix == previous.length && prefix == current.length) {
+            return Collections.emptyList();
+        }
+
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && previous[previous.length - 1 - suffix] == current[current.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        int[] inserted = Arrays.copyOfRange(current, prefix, current.length - suffix);
+        return Collections.singletonList(new SemanticTokensEdit(prefix, previous.length - suffix - prefix, Ints.asList(inserted)));
+    }
+
+    public void clear(String uri) {
+        previousResults.remove(uri);
+    }
+
+    public void clearAll() {
+        previousResults.clear();
+    }
+
+    private static class Result {
+        private final String id;
+        private final int[] data;
+
+        Result(String id, int[] data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
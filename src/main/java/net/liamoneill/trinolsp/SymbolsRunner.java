@@ -0,0 +1,85 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import org.eclipse.lsp4j.DocumentSymbol;
+import org.eclipse.lsp4j.DocumentSymbolParams;
+import org.eclipse.lsp4j.FoldingRange;
+import org.eclipse.lsp4j.FoldingRangeRequestParams;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.WorkspaceSymbolParams;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the outline, folding ranges and workspace symbol search from the symbol index of each document, which is
+ * built once per document version.
+ */
+public class SymbolsRunner {
+    private static final int MAX_WORKSPACE_SYMBOLS = 500;
+
+    private final TrinoLanguageServer trinoLanguageServer;
+
+    public SymbolsRunner(TrinoLanguageServer trinoLanguageServer) {
+        this.trinoLanguageServer = trinoLanguageServer;
+    }
+
+    public CompletableFuture<List<Either<SymbolInformation, DocumentSymbol>>> compute(DocumentSymbolParams params) {
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(params.getTextDocument().getUri());
+        if (document == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.SYMBOLS, () -> document.getSymbolIndex().getDocumentSymbols().stream()
+                        .map(Either::<SymbolInformation, DocumentSymbol>forRight)
+                        .collect(Collectors.toList()));
+    }
+
+    public CompletableFuture<List<FoldingRange>> compute(FoldingRangeRequestParams params) {
+        DocumentSnapshot document = trinoLanguageServer.getTextDocumentService().getAnalyzableDocument(params.getTextDocument().getUri());
+        if (document == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.SYMBOLS, () -> document.getSymbolIndex().getFoldingRanges());
+    }
+
+    /**
+     * Searches the symbols of all opened documents whose name contains the query, ignoring case.
+     */
+    public CompletableFuture<List<? extends SymbolInformation>> compute(WorkspaceSymbolParams params) {
+        String query = params.getQuery().toLowerCase(Locale.ENGLISH);
+        List<DocumentSnapshot> documents = trinoLanguageServer.getTextDocumentService().getAllOpenedDocuments().stream()
+                .filter(trinoLanguageServer.getTextDocumentService()::isAnalyzable)
+                .collect(Collectors.toList());
+        return trinoLanguageServer.getAnalysisEngine().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.SYMBOLS, () -> {
+                    List<SymbolInformation> result = new ArrayList<>();
+                    for (DocumentSnapshot document : documents) {
+                        for (DocumentSymbol statement : document.getSymbolIndex().getDocumentSymbols()) {
+                            addIfMatching(result, query, document, statement, null);
+                            for (DocumentSymbol child : statement.getChildren()) {
+                                addIfMatching(result, query, document, child, statement.getName());
+                            }
+                            if (result.size() >= MAX_WORKSPACE_SYMBOLS) {
+                                return result.subList(0, MAX_WORKSPACE_SYMBOLS);
+                            }
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    private static void addIfMatching(List<SymbolInformation> result, String query, DocumentSnapshot document, DocumentSymbol symbol, String containerName) {
+        if (symbol.getName().toLowerCase(Locale.ENGLISH).contains(query)) {
+            Location location = new Location(document.getUri(), symbol.getSelectionRange());
+            result.add(new SymbolInformation(symbol.getName(), symbol.getKind(), location, containerName));
+        }
+    }
+}
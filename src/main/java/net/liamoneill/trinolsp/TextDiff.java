@@ -0,0 +1,126 @@
+package net.liamoneill.trinolsp;
+
+import java.util.Arrays;
+
+/**
+ * Diffs two texts by {@link MyersDiff} over their words, runs of whitespace and other single characters.
+ *
+ * Each such unit is given an int id, equal units sharing the same one, without copying the unit out of its text: the
+ * ids are interned in an open addressing table of int arrays which compares units in place.
+ */
+public final class TextDiff {
+
+    private static final int WORD = 0;
+    private static final int WHITESPACE = 1;
+    private static final int OTHER = 2;
+
+    private TextDiff() {
+    }
+
+    /**
+     * Returns the hunks turning one text into another, four ints each: the [start, end) character range replaced in
+     * the original text, and the [start, end) range of the revised text replacing it.
+     */
+    public static int[] diff(String original, String revised, long timeoutMillis) {
+        int[] originalStarts = unitStarts(original);
+        int[] revisedStarts = unitStarts(revised);
+
+        Interner interner = new Interner(originalStarts.length + revisedStarts.length);
+        int[] originalIds = interner.ids(original, originalStarts);
+        int[] revisedIds = interner.ids(revised, revisedStarts);
+
+        int[] hunks = MyersDiff.diff(originalIds, revisedIds, timeoutMillis);
+        for (int i = 0; i < hunks.length; i += 4) {
+            hunks[i] = originalStarts[hunks[i]];
+            hunks[i + 1] = originalStarts[hunks[i + 1]];
+            hunks[i + 2] = revisedStarts[hunks[i + 2]];
+            hunks[i + 3] = revisedStarts[hunks[i + 3]];
+        }
+        return hunks;
+    }
+
+    /**
+     * Returns the start offset of each unit of the text, followed by the length of the text.
+     */
+    private static int[] unitStarts(String text) {
+        int[] starts = new int[Math.max(16, text.length() / 4)];
+        int count = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (count + 1 >= starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[count++] = i;
+
+            char c = text.charAt(i++);
+            int kind = kind(c);
+            if (kind == OTHER) {
+                if (Character.isHighSurrogate(c) && i < text.length() && Character.isLowSurrogate(text.charAt(i))) {
+                    i++;
+                }
+                continue;
+            }
+            while (i < text.length() && kind(text.charAt(i)) == kind) {
+                i++;
+            }
+        }
+        starts[count++] = text.length();
+        return Arrays.copyOf(starts, count);
+    }
+
+    private static int kind(char c) {
+        if (Character.isLetterOrDigit(c) || c == '_') {
+            return WORD;
+        }
+        if (Character.isWhitespace(c)) {
+            return WHITESPACE;
+        }
+        return OTHER;
+    }
+
+    private static class Interner {
+        // Id + 1 of the unit in each slot, 0 for an empty slot
+        private final int[] slots;
+        // The text, start and end of the first unit given each id
+        private final String[] texts;
+        private final int[] starts;
+        private final int[] ends;
+        private int size;
+
+        Interner(int maxUnits) {
+            slots = new int[Integer.highestOneBit(Math.max(maxUnits, 8)) * 4];
+            texts = new String[maxUnits];
+            starts = new int[maxUnits];
+            ends = new int[maxUnits];
+        }
+
+        int[] ids(String text, int[] unitStarts) {
+            int[] ids = new int[unitStarts.length - 1];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id(text, unitStarts[i], unitStarts[i + 1]);
+            }
+            return ids;
+        }
+
+        private int id(String text, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            int mask = slots.length - 1;
+            for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+                int id = slots[slot] - 1;
+                if (id < 0) {
+                    texts[size] = text;
+                    starts[size] = start;
+                    ends[size] = end;
+                    slots[slot] = ++size;
+                    return size - 1;
+                }
+                if (ends[id] - starts[id] == end - start && text.regionMatches(start, texts[id], starts[id], end - start)) {
+                    return id;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package net.liamoneill.trinolsp;
+
+import io.trino.sql.parser.CaseInsensitiveStream;
+import io.trino.sql.parser.SqlBaseLexer;
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextEdit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the edits turning SQL into its formatted version by aligning their tokens, rather than diffing characters.
+ *
+ * Formatting only changes the whitespace between tokens and the case of keywords, so the two token streams usually
+ * match one to one. Each token and the gap before it is then compared with its counterpart, and only those which
+ * differ are replaced, in a single linear pass. When the formatter added or removed tokens (e.g. an implicit alias
+ * made explicit), the streams do not match and the edits come from a text diff instead.
+ */
+public final class TokenAlignedEdits {
+
+    private TokenAlignedEdits() {
+    }
+
+    public static List<TextEdit> compute(String originalText, String formattedText) {
+        int[] original = tokenOffsets(originalText);
+        int[] formatted = tokenOffsets(formattedText);
+        if (original.length != formatted.length) {
+            return Utils.editsForDiff(originalText, formattedText);
+        }
+
+        Edits edits = new Edits(originalText, formattedText);
+        int originalPosition = 0;
+        int formattedPosition = 0;
+        for (int i = 0; i < original.length; i += 2) {
+            // The gap before the token, then the token itself
+            edits.compare(originalPosition, original[i], formattedPosition, formatted[i]);
+            edits.compare(original[i], original[i + 1], formatted[i], formatted[i + 1]);
+            originalPosition = original[i + 1];
+            formattedPosition = formatted[i + 1];
+        }
+        edits.compare(originalPosition, originalText.length(), formattedPosition, formattedText.length());
+        return edits.finish();
+    }
+
+    /**
+     * Returns the start and end (UTF-16) offsets of each default channel token.
+     */
+    private static int[] tokenOffsets(String text) {
+        SqlBaseLexer lexer = new SqlBaseLexer(new CaseInsensitiveStream(CharStreams.fromString(text)));
+        lexer.removeErrorListeners();
+
+        // ANTLR indexes code points, LSP positions count UTF-16 characters
+        boolean surrogates = text.length() != text.codePointCount(0, text.length());
+        int codePoint = 0;
+        int offset = 0;
+
+        int[] offsets = new int[256];
+        int size = 0;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            if (token.getChannel() != Token.DEFAULT_CHANNEL) {
+                continue;
+            }
+            int start = token.getStartIndex();
+            int end = token.getStopIndex() + 1;
+            if (surrogates) {
+                offset = text.offsetByCodePoints(offset, start - codePoint);
+                int endOffset = text.offsetByCodePoints(offset, end - start);
+                codePoint = start;
+                start = offset;
+                end = endOffset;
+            }
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[size++] = start;
+            offsets[size++] = end;
+        }
+        return Arrays.copyOf(offsets, size);
+    }
+
+    /**
+     * Collects the edits, merging those which touch so that e.g. a keyword and the whitespace after it are replaced
+     * by a single edit.
+     */
+    private static class Edits {
+        private final String originalText;
+        private final String formattedText;
+        private final LineIndex lineIndex;
+        private final List<TextEdit> edits = new ArrayList<>();
+
+        private int pendingStart = -1;
+        private int pendingEnd;
+        private final StringBuilder pendingText = new StringBuilder();
+
+        Edits(String originalText, String formattedText) {
+            this.originalText = originalText;
+            this.formattedText = formattedText;
+            this.lineIndex = LineIndex.of(originalText);
+        }
+
+        void compare(int originalStart, int originalEnd, int formattedStart, int formattedEnd) {
+            int length = originalEnd - originalStart;
+            if (length == formattedEnd - formattedStart
+                    && originalText.regionMatches(originalStart, formattedText, formattedStart, length)) {
+                return;
+            }
+            if (pendingStart >= 0 && pendingEnd != originalStart) {
+                flush();
+            }
+            if (pendingStart < 0) {
+                pendingStart = originalStart;
+            }
+            pendingEnd = originalEnd;
+            pendingText.append(formattedText, formattedStart, formattedEnd);
+        }
+
+        private void flush() {
+            Range range = new Range(lineIndex.positionAt(pendingStart), lineIndex.positionAt(pendingEnd));
+            edits.add(new TextEdit(range, pendingText.toString()));
+            pendingStart = -1;
+            pendingText.setLength(0);
+        }
+
+        List<TextEdit> finish() {
+            if (pendingStart >= 0) {
+                flush();
+            }
+            return edits;
+        }
+    }
+}
@@ -9,17 +9,28 @@ import org.eclipse.lsp4j.services.WorkspaceService;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TrinoLanguageServer implements LanguageServer, LanguageClientAware {
 
+    private final AnalysisEngine analysisEngine;
     private final TrinoTextDocumentService textDocumentService;
     private final TrinoWorkspaceService workspaceService;
+    private final DiagnosticsScheduler diagnosticsScheduler;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     private LanguageClient client;
 
     public TrinoLanguageServer() {
+        this(AnalysisEngine.getShared());
+    }
+
+    public TrinoLanguageServer(AnalysisEngine analysisEngine) {
+        analysisEngine.sessionStarted();
+        this.analysisEngine = analysisEngine;
         this.textDocumentService = new TrinoTextDocumentService(this);
-        this.workspaceService = new TrinoWorkspaceService();
+        this.workspaceService = new TrinoWorkspaceService(this);
+        this.diagnosticsScheduler = new DiagnosticsScheduler(this);
     }
 
     @Override
@@ -27,14 +38,20 @@ public class TrinoLanguageServer implements LanguageServer, LanguageClientAware
         InitializeResult initializeResult = new InitializeResult(new ServerCapabilities());
 
         ServerCapabilities capabilities = initializeResult.getCapabilities();
-        capabilities.setTextDocumentSync(TextDocumentSyncKind.Full);
+        capabilities.setTextDocumentSync(TextDocumentSyncKind.Incremental);
         capabilities.setCompletionProvider(new CompletionOptions());
         capabilities.setCodeLensProvider(new CodeLensOptions());
         capabilities.setDocumentFormattingProvider(new DocumentFormattingOptions());
+        capabilities.setDocumentRangeFormattingProvider(new DocumentRangeFormattingOptions());
+        capabilities.setDocumentOnTypeFormattingProvider(new DocumentOnTypeFormattingOptions(";"));
         capabilities.setCodeActionProvider(new CodeActionOptions(Collections.singletonList(CodeActionKind.QuickFix)));
         capabilities.setHoverProvider(new HoverOptions());
+        capabilities.setDocumentSymbolProvider(true);
+        capabilities.setFoldingRangeProvider(true);
+        capabilities.setWorkspaceSymbolProvider(true);
+        capabilities.setSemanticTokensProvider(SemanticTokensRunner.getCapabilities());
 
-        return CompletableFuture.supplyAsync(() -> initializeResult);
+        return CompletableFuture.completedFuture(initializeResult);
     }
 
     @Override
@@ -50,7 +67,19 @@ public class TrinoLanguageServer implements LanguageServer, LanguageClientAware
 
     @Override
     public void exit() {
-        // ignore
+        close();
+    }
+
+    /**
+     * Releases the documents and pending work of this session. Called when the client exits or its connection is
+     * closed, whichever happens first.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            diagnosticsScheduler.cancelAll();
+            textDocumentService.closeAll();
+            analysisEngine.sessionEnded();
+        }
     }
 
     @Override
@@ -63,6 +92,14 @@ public class TrinoLanguageServer implements LanguageServer, LanguageClientAware
         return workspaceService;
     }
 
+    public AnalysisEngine getAnalysisEngine() {
+        return analysisEngine;
+    }
+
+    public DiagnosticsScheduler getDiagnosticsScheduler() {
+        return diagnosticsScheduler;
+    }
+
     public LanguageClient getClient() {
         return client;
     }
@@ -1,5 +1,7 @@
 package net.liamoneill.trinolsp;
 
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import net.liamoneill.trinolsp.document.DocumentStore;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.TextDocumentService;
@@ -14,10 +16,12 @@ public class TrinoTextDocumentService implements TextDocumentService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TrinoTextDocumentService.class);
 
     private final TrinoLanguageServer trinoLanguageServer;
-    private final Map<String, TextDocumentItem> openedDocuments = new HashMap<>();
+    private final DocumentStore openedDocuments = new DocumentStore();
+    private final SemanticTokensRunner semanticTokensRunner;
 
     public TrinoTextDocumentService(TrinoLanguageServer trinoLanguageServer) {
         this.trinoLanguageServer = trinoLanguageServer;
+        this.semanticTokensRunner = new SemanticTokensRunner(trinoLanguageServer);
     }
 
     @Override
@@ -69,7 +73,13 @@ public class TrinoTextDocumentService implements TextDocumentService {
     @Override
     public CompletableFuture<List<Either<SymbolInformation, DocumentSymbol>>> documentSymbol(DocumentSymbolParams params) {
         LOGGER.info("documentSymbol: {}", params.getTextDocument());
-        return CompletableFuture.completedFuture(Collections.emptyList());
+        return new SymbolsRunner(trinoLanguageServer).compute(params);
+    }
+
+    @Override
+    public CompletableFuture<List<FoldingRange>> foldingRange(FoldingRangeRequestParams params) {
+        LOGGER.info("foldingRange: {}", params.getTextDocument());
+        return new SymbolsRunner(trinoLanguageServer).compute(params);
     }
 
     @Override
@@ -102,13 +112,25 @@ public class TrinoTextDocumentService implements TextDocumentService {
     @Override
     public CompletableFuture<List<? extends TextEdit>> rangeFormatting(DocumentRangeFormattingParams params) {
         LOGGER.info("rangeFormatting: {}", params.getTextDocument());
-        return CompletableFuture.completedFuture(Collections.emptyList());
+        return new FormatterRunner(trinoLanguageServer).compute(params);
     }
 
     @Override
     public CompletableFuture<List<? extends TextEdit>> onTypeFormatting(DocumentOnTypeFormattingParams params) {
         LOGGER.info("onTypeFormatting: {}", params.getTextDocument());
-        return CompletableFuture.completedFuture(Collections.emptyList());
+        return new FormatterRunner(trinoLanguageServer).compute(params);
+    }
+
+    @Override
+    public CompletableFuture<SemanticTokens> semanticTokensFull(SemanticTokensParams params) {
+        LOGGER.info("semanticTokensFull: {}", params.getTextDocument());
+        return semanticTokensRunner.full(params);
+    }
+
+    @Override
+    public CompletableFuture<Either<SemanticTokens, SemanticTokensDelta>> semanticTokensFullDelta(SemanticTokensDeltaParams params) {
+        LOGGER.info("semanticTokensFullDelta: {}", params.getTextDocument());
+        return semanticTokensRunner.delta(params);
     }
 
     @Override
@@ -121,7 +143,15 @@ public class TrinoTextDocumentService implements TextDocumentService {
     public void didOpen(DidOpenTextDocumentParams params) {
         TextDocumentItem textDocument = params.getTextDocument();
         LOGGER.info("didOpen: {}", textDocument);
-        openedDocuments.put(textDocument.getUri(), textDocument);
+
+        int maxOpenDocuments = trinoLanguageServer.getAnalysisEngine().getSessionLimits().getMaxOpenDocuments();
+        if (openedDocuments.get(textDocument.getUri()) == null && openedDocuments.size() >= maxOpenDocuments) {
+            LOGGER.warn("Not tracking {}: the session already has {} opened documents", textDocument.getUri(), maxOpenDocuments);
+            trinoLanguageServer.getClient().showMessage(new MessageParams(MessageType.Warning,
+                    "Too many open SQL documents (limit " + maxOpenDocuments + "), close some to analyze " + textDocument.getUri()));
+            return;
+        }
+        openedDocuments.open(textDocument);
 
         new DiagnosticRunner(trinoLanguageServer).compute(params);
     }
@@ -130,9 +160,9 @@ public class TrinoTextDocumentService implements TextDocumentService {
     public void didChange(DidChangeTextDocumentParams params) {
         LOGGER.info("didChange: {}", params.getTextDocument());
         List<TextDocumentContentChangeEvent> contentChanges = params.getContentChanges();
-        TextDocumentItem textDocumentItem = openedDocuments.get(params.getTextDocument().getUri());
+        String uri = params.getTextDocument().getUri();
         if (!contentChanges.isEmpty()) {
-            textDocumentItem.setText(contentChanges.get(0).getText());
+            openedDocuments.change(uri, params.getTextDocument().getVersion(), contentChanges);
             new DiagnosticRunner(trinoLanguageServer).compute(params);
         }
     }
@@ -141,7 +171,8 @@ public class TrinoTextDocumentService implements TextDocumentService {
     public void didClose(DidCloseTextDocumentParams params) {
         LOGGER.info("didClose: {}", params.getTextDocument());
         String uri = params.getTextDocument().getUri();
-        openedDocuments.remove(uri);
+        openedDocuments.close(uri);
+        semanticTokensRunner.clear(uri);
 
         /* The rule observed by VS Code servers as explained in LSP specification is to clear the Diagnostic when it is related to a single file.
          * https://microsoft.github.io/language-server-protocol/specification#textDocument_publishDiagnostics
@@ -155,11 +186,35 @@ public class TrinoTextDocumentService implements TextDocumentService {
         new DiagnosticRunner(trinoLanguageServer).compute(params);
     }
 
-    public TextDocumentItem getOpenedDocument(String uri) {
+    /**
+     * Returns the latest snapshot of an opened document. Runners should take the snapshot once and read everything
+     * they need (text, line index, parsed statements) from it, so their results are consistent with one version.
+     */
+    public DocumentSnapshot getOpenedDocument(String uri) {
         return openedDocuments.get(uri);
     }
 
-    public Collection<TextDocumentItem> getAllOpenedDocuments() {
-        return openedDocuments.values();
+    public Collection<DocumentSnapshot> getAllOpenedDocuments() {
+        return openedDocuments.getAll();
+    }
+
+    /**
+     * Returns the latest snapshot of an opened document if it is small enough to be analyzed, or null.
+     */
+    public DocumentSnapshot getAnalyzableDocument(String uri) {
+        DocumentSnapshot document = openedDocuments.get(uri);
+        if (document == null || !isAnalyzable(document)) {
+            return null;
+        }
+        return document;
+    }
+
+    public boolean isAnalyzable(DocumentSnapshot document) {
+        return document.getContent().length() <= trinoLanguageServer.getAnalysisEngine().getSessionLimits().getMaxDocumentCharacters();
+    }
+
+    void closeAll() {
+        openedDocuments.closeAll();
+        semanticTokensRunner.clearAll();
     }
 }
@@ -11,10 +11,15 @@ import java.util.concurrent.CompletableFuture;
 
 public class TrinoWorkspaceService implements WorkspaceService {
 
-    // TODO is overriding `symbol` necessary?
+    private final TrinoLanguageServer trinoLanguageServer;
+
+    public TrinoWorkspaceService(TrinoLanguageServer trinoLanguageServer) {
+        this.trinoLanguageServer = trinoLanguageServer;
+    }
+
     @Override
     public CompletableFuture<List<? extends SymbolInformation>> symbol(WorkspaceSymbolParams workspaceSymbolParams) {
-        return null;
+        return new SymbolsRunner(trinoLanguageServer).compute(workspaceSymbolParams);
     }
 
     @Override
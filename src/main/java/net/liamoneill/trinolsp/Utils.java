@@ -1,74 +1,46 @@
 package net.liamoneill.trinolsp;
 
-import name.fraser.neil.plaintext.diff_match_patch;
+import net.liamoneill.trinolsp.document.LineIndex;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.TextEdit;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Utils {
 
-    private Utils() {
-    }
-
-    public static Position positionAt(String text, int offset) {
-        // Adapted from https://github.com/microsoft/vscode/blob/main/extensions/markdown-language-features/src/test/inMemoryDocument.ts#L48
-
-        String before = text.substring(0, offset);
-        Matcher newLines = Pattern.compile("\r\n|\n").matcher(before);
+    // After this long the diff gives up looking for the smallest set of edits, and returns a coarser one
+    private static final long DIFF_TIMEOUT_MILLIS = Long.getLong("trinolsp.formatter.diffTimeoutMillis", 1_000);
 
-        int line = 0;
-        if (newLines.find()) {
-            line++;
-        }
-
-        Matcher preCharacters = Pattern.compile("(\r\n|\n|^).*$").matcher(before);
-
-        int character = preCharacters.find() ? preCharacters.group(0).length() : 0;
-        return new Position(line, character);
+    private Utils() {
     }
 
+    /**
+     * Returns the edits turning a text into another, one per differing region.
+     */
     public static List<TextEdit> editsForDiff(String originalText, String output) {
-        // Adapted from https://github.com/rubyide/vscode-ruby/blob/master/packages/language-server-ruby/src/formatters/BaseFormatter.ts#L91
-
-        diff_match_patch differ = new diff_match_patch();
-        List<diff_match_patch.Diff> diffs = differ.diff_main(originalText, output);
-
-        List<TextEdit> edits = new ArrayList<>();
-        int position = 0;
-        for (diff_match_patch.Diff diff : diffs) {
-            String str = diff.text;
-
-            Position startPos = Utils.positionAt(originalText, position);
-
-            Range range;
-            switch (diff.operation) {
-                case DELETE -> {
-                    int endPosition = position + str.length();
-                    range = new Range(startPos, Utils.positionAt(originalText, endPosition));
-                    edits.add(new TextEdit(range, ""));
-                    position = endPosition;
-                }
-                case INSERT -> {
-                    range = new Range(startPos, startPos);
-                    edits.add(new TextEdit(range, str));
-                }
-                case EQUAL -> position += str.length();
-            }
+        int[] hunks = TextDiff.diff(originalText, output, DIFF_TIMEOUT_MILLIS);
+
+        // Positions are only computed for the hunks, once the diff is done
+        LineIndex lineIndex = LineIndex.of(originalText);
+        List<TextEdit> edits = new ArrayList<>(hunks.length / 4);
+        for (int i = 0; i < hunks.length; i += 4) {
+            Range range = new Range(lineIndex.positionAt(hunks[i]), lineIndex.positionAt(hunks[i + 1]));
+            edits.add(new TextEdit(range, output.substring(hunks[i + 2], hunks[i + 3])));
         }
-
         return edits;
     }
 
     public static boolean inRange(Position position, Range range) {
-        return !(position.getLine() >= range.getStart().getLine() ||
-                position.getCharacter() < range.getStart().getCharacter() ||
-                position.getLine() > range.getEnd().getLine() ||
-                position.getCharacter() > range.getEnd().getCharacter());
+        return comparePositions(position, range.getStart()) >= 0
+                && comparePositions(position, range.getEnd()) <= 0;
+    }
 
+    public static int comparePositions(Position left, Position right) {
+        if (left.getLine() != right.getLine()) {
+            return Integer.compare(left.getLine(), right.getLine());
+        }
+        return Integer.compare(left.getCharacter(), right.getCharacter());
     }
 }
@@ -0,0 +1,246 @@
+package net.liamoneill.trinolsp.catalog;
+
+import net.liamoneill.trinolsp.completion.RankedPrefixIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An immutable, prefix-searchable index of the tables and columns of the known catalogs.
+ *
+ * Tables are ranked by how often they are used (the snapshot's frequency), and columns by the number of tables they
+ * appear in, each in a {@link RankedPrefixIndex}. Tables are indexed by their name, by `schema.name` and by
+ * `catalog.schema.name`, so that the tables of a schema are a prefix range of their own rather than a filter over
+ * every table with a matching name. Schemas are ranked by the summed frequency of their tables.
+ *
+ * Names are interned: column names and types repeat across many tables, and each distinct string is only stored once.
+ */
+public class CatalogIndex {
+
+    private static final CatalogIndex EMPTY = new CatalogIndex(new Table[0], new String[0]);
+
+    private final Table[] tables;
+    private final String[] columnNames;
+    private final Table[] schemas;
+    private final RankedPrefixIndex tableRanking;
+    private final RankedPrefixIndex schemaTableRanking;
+    private final RankedPrefixIndex qualifiedTableRanking;
+    private final RankedPrefixIndex columnRanking;
+    private final RankedPrefixIndex schemaRanking;
+
+    private CatalogIndex(Table[] tables, String[] columnNames) {
+        this.tables = tables;
+        String[] tableNames = new String[tables.length];
+        String[] schemaTableNames = new String[tables.length];
+        String[] qualifiedTableNames = new String[tables.length];
+        int[] tableWeights = new int[tables.length];
+        Map<String, Integer> columnTableCounts = new HashMap<>();
+        // A table of each schema, by `catalog.schema`, with the schema's weight
+        Map<String, Table> schemaTables = new LinkedHashMap<>();
+        Map<String, Long> schemaWeights = new HashMap<>();
+        for (int i = 0; i < tables.length; i++) {
+            tableNames[i] = tables[i].getName();
+            schemaTableNames[i] = tables[i].getSchema() + "." + tables[i].getName();
+            qualifiedTableNames[i] = tables[i].getQualifiedName();
+            tableWeights[i] = tables[i].getFrequency();
+            for (String column : tables[i].columnNames) {
+                columnTableCounts.merge(column, 1, Integer::sum);
+            }
+            String schemaKey = key(tables[i].getCatalog() + "." + tables[i].getSchema());
+            schemaTables.putIfAbsent(schemaKey, tables[i]);
+            schemaWeights.merge(schemaKey, (long) tables[i].getFrequency(), Long::sum);
+        }
+        this.columnNames = columnNames;
+
+        this.schemas = schemaTables.values().toArray(new Table[0]);
+        List<String> schemaKeys = new ArrayList<>(schemaTables.keySet());
+        int[] schemaRankingWeights = new int[schemas.length];
+        for (int i = 0; i < schemas.length; i++) {
+            schemaRankingWeights[i] = (int) Math.min(Integer.MAX_VALUE, schemaWeights.get(schemaKeys.get(i)));
+        }
+
+        int[] columnWeights = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnWeights[i] = columnTableCounts.get(columnNames[i]);
+        }
+        this.tableRanking = RankedPrefixIndex.build(Arrays.asList(tableNames), tableWeights);
+        this.schemaTableRanking = RankedPrefixIndex.build(Arrays.asList(schemaTableNames), tableWeights);
+        this.qualifiedTableRanking = RankedPrefixIndex.build(Arrays.asList(qualifiedTableNames), tableWeights);
+        this.columnRanking = RankedPrefixIndex.build(Arrays.asList(columnNames), columnWeights);
+        this.schemaRanking = RankedPrefixIndex.build(schemaKeys, schemaRankingWeights);
+    }
+
+    public static CatalogIndex empty() {
+        return EMPTY;
+    }
+
+    public static CatalogIndex of(List<Table> tables) {
+        // Sorted so that tables and columns of equal weight are ranked in name order
+        Table[] sortedTables = tables.toArray(new Table[0]);
+        Arrays.sort(sortedTables, Comparator.comparing((Table table) -> key(table.getName()))
+                .thenComparing(Table::getQualifiedName));
+
+        TreeSet<String> distinctColumns = new TreeSet<>(Comparator.comparing(CatalogIndex::key).thenComparing(Comparator.naturalOrder()));
+        for (Table table : sortedTables) {
+            distinctColumns.addAll(Arrays.asList(table.columnNames));
+        }
+        return new CatalogIndex(sortedTables, distinctColumns.toArray(new String[0]));
+    }
+
+    public int getTableCount() {
+        return tables.length;
+    }
+
+    /**
+     * Returns up to {@code limit} tables matching a prefix, most frequently used first. The tables can be restricted to
+     * a schema, or to a schema of a catalog; a catalog is ignored without a schema.
+     */
+    public List<Table> rankedTables(String catalog, String schema, String prefix, int limit) {
+        int[] ids;
+        if (schema == null) {
+            ids = tableRanking.search(prefix, limit, id -> true);
+        } else if (catalog == null) {
+            ids = schemaTableRanking.search(schema + "." + prefix, limit,
+                    id -> tables[id].getSchema().equalsIgnoreCase(schema) && fuzzyMatchStart(tables[id].getName(), prefix));
+        } else {
+            ids = qualifiedTableRanking.search(catalog + "." + schema + "." + prefix, limit,
+                    id -> tables[id].getCatalog().equalsIgnoreCase(catalog) && tables[id].getSchema().equalsIgnoreCase(schema)
+                            && fuzzyMatchStart(tables[id].getName(), prefix));
+        }
+
+        List<Table> matches = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            matches.add(tables[id]);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns up to {@code limit} names of the schemas of a catalog matching a prefix, those whose tables are used
+     * most first.
+     */
+    public List<String> rankedSchemas(String catalog, String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        for (int id : schemaRanking.search(catalog + "." + prefix, limit,
+                id -> schemas[id].getCatalog().equalsIgnoreCase(catalog) && fuzzyMatchStart(schemas[id].getSchema(), prefix))) {
+            matches.add(schemas[id].getSchema());
+        }
+        return matches;
+    }
+
+    /**
+     * Returns up to {@code limit} distinct column names matching a prefix, those used by the most tables first.
+     */
+    public List<String> rankedColumns(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        for (int id : columnRanking.search(prefix, limit, id -> true)) {
+            matches.add(columnNames[id]);
+        }
+        return matches;
+    }
+
+    /**
+     * Fuzzy matches of a qualified name only have to start like the qualifier, this keeps them to the same schema and
+     * to names starting like the prefix, as for unqualified names.
+     */
+    private static boolean fuzzyMatchStart(String name, String prefix) {
+        return prefix.isEmpty() || name.regionMatches(true, 0, prefix, 0, 1);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    public static class Table {
+        private final String catalog;
+        private final String schema;
+        private final String name;
+        private final String[] columnNames;
+        private final String[] columnTypes;
+        private final int frequency;
+
+        public Table(String catalog, String schema, String name, String[] columnNames, String[] columnTypes, int frequency) {
+            if (columnNames.length != columnTypes.length) {
+                throw new IllegalArgumentException("Every column of " + name + " must have a type");
+            }
+            this.catalog = catalog;
+            this.schema = schema;
+            this.name = name;
+            this.columnNames = columnNames;
+            this.columnTypes = columnTypes;
+            this.frequency = frequency;
+        }
+
+        public String getCatalog() {
+            return catalog;
+        }
+
+        public String getSchema() {
+            return schema;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getQualifiedName() {
+            return catalog + "." + schema + "." + name;
+        }
+
+        public List<String> getColumnNames() {
+            return Collections.unmodifiableList(Arrays.asList(columnNames));
+        }
+
+        public List<String> getColumnTypes() {
+            return Collections.unmodifiableList(Arrays.asList(columnTypes));
+        }
+
+        /**
+         * How often the table is used, relative to the other tables. Only used for ranking.
+         */
+        public int getFrequency() {
+            return frequency;
+        }
+    }
+
+    /**
+     * Builds tables from names which are interned as they are added.
+     */
+    public static class Builder {
+        private final Map<String, String> strings = new HashMap<>();
+        private final List<Table> tables = new ArrayList<>();
+
+        public Builder addTable(String catalog, String schema, String name, List<String> columnNames, List<String> columnTypes) {
+            return addTable(catalog, schema, name, columnNames, columnTypes, 0);
+        }
+
+        public Builder addTable(String catalog, String schema, String name, List<String> columnNames, List<String> columnTypes, int frequency) {
+            String[] names = new String[columnNames.size()];
+            String[] types = new String[columnTypes.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = intern(columnNames.get(i));
+            }
+            for (int i = 0; i < types.length; i++) {
+                types[i] = intern(columnTypes.get(i));
+            }
+            tables.add(new Table(intern(catalog), intern(schema), intern(name), names, types, frequency));
+            return this;
+        }
+
+        private String intern(String value) {
+            return strings.computeIfAbsent(value, key -> key);
+        }
+
+        public CatalogIndex build() {
+            return CatalogIndex.of(tables);
+        }
+    }
+}
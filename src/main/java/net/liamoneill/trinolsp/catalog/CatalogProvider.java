@@ -0,0 +1,34 @@
+package net.liamoneill.trinolsp.catalog;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+
+/**
+ * Supplies the catalog metadata used for completion.
+ *
+ * {@link #getIndex()} is called on request threads and must never block: providers load and refresh their metadata
+ * in the background and return the latest complete index (or an empty one until the first load finishes).
+ */
+public interface CatalogProvider {
+
+    CatalogIndex getIndex();
+
+    /**
+     * Returns the provider configured by the {@code trinolsp.catalog.snapshot} system property (the path of a JSON
+     * snapshot file), or a provider with a few example tables when it is not set.
+     */
+    static CatalogProvider fromSystemProperties() {
+        String snapshot = System.getProperty("trinolsp.catalog.snapshot");
+        if (snapshot != null) {
+            long refreshSeconds = Long.getLong("trinolsp.catalog.refreshSeconds", 300);
+            return SnapshotCatalogProvider.start(Paths.get(snapshot), refreshSeconds);
+        }
+
+        CatalogIndex.Builder builder = new CatalogIndex.Builder();
+        for (String table : new String[] {"profiles", "events", "orders", "carts", "returns"}) {
+            builder.addTable("hive", "default", table, Collections.emptyList(), Collections.emptyList());
+        }
+        CatalogIndex index = builder.build();
+        return () -> index;
+    }
+}
@@ -0,0 +1,131 @@
+package net.liamoneill.trinolsp.catalog;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads catalog metadata from a JSON snapshot file, and reloads it in the background when the file changes.
+ *
+ * The snapshot lists catalogs, their schemas, tables and columns, and optionally how often each table is used (e.g.
+ * counted from the query log) to rank completions:
+ * <pre>
+ * {"catalogs": [{"name": "hive", "schemas": [{"name": "default", "tables": [
+ *     {"name": "events", "frequency": 1200, "columns": [{"name": "id", "type": "varchar"}]}]}]}]}
+ * </pre>
+ */
+public class SnapshotCatalogProvider implements CatalogProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotCatalogProvider.class);
+
+    private static final Gson GSON = new Gson();
+
+    private final Path path;
+    private volatile CatalogIndex index = CatalogIndex.empty();
+    private FileTime loadedModifiedTime;
+
+    SnapshotCatalogProvider(Path path) {
+        this.path = path;
+    }
+
+    static SnapshotCatalogProvider start(Path path, long refreshSeconds) {
+        SnapshotCatalogProvider provider = new SnapshotCatalogProvider(path);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("trino-lsp-catalog-refresh-%d")
+                        .setDaemon(true)
+                        .build());
+        executor.scheduleWithFixedDelay(provider::refresh, 0, refreshSeconds, TimeUnit.SECONDS);
+        return provider;
+    }
+
+    @Override
+    public CatalogIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Reloads the snapshot if it changed since the last load. A snapshot which cannot be read keeps the previous
+     * index in place.
+     */
+    void refresh() {
+        try {
+            FileTime modifiedTime = Files.getLastModifiedTime(path);
+            if (modifiedTime.equals(loadedModifiedTime)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            CatalogIndex loaded;
+            try (Reader reader = Files.newBufferedReader(path)) {
+                loaded = toIndex(GSON.fromJson(reader, Snapshot.class));
+            }
+            index = loaded;
+            loadedModifiedTime = modifiedTime;
+            LOGGER.info("Loaded {} tables from {} in {} ms", loaded.getTableCount(), path,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to load catalog snapshot {}", path, e);
+        }
+    }
+
+    static CatalogIndex toIndex(Snapshot snapshot) {
+        CatalogIndex.Builder builder = new CatalogIndex.Builder();
+        for (Snapshot.Catalog catalog : nullToEmpty(snapshot.catalogs)) {
+            for (Snapshot.Schema schema : nullToEmpty(catalog.schemas)) {
+                for (Snapshot.Table table : nullToEmpty(schema.tables)) {
+                    List<String> columnNames = new ArrayList<>();
+                    List<String> columnTypes = new ArrayList<>();
+                    for (Snapshot.Column column : nullToEmpty(table.columns)) {
+                        columnNames.add(column.name);
+                        columnTypes.add(column.type != null ? column.type : "unknown");
+                    }
+                    builder.addTable(catalog.name, schema.name, table.name, columnNames, columnTypes, table.frequency);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list != null ? list : Collections.emptyList();
+    }
+
+    static class Snapshot {
+        List<Catalog> catalogs;
+
+        static class Catalog {
+            String name;
+            List<Schema> schemas;
+        }
+
+        static class Schema {
+            String name;
+            List<Table> tables;
+        }
+
+        static class Table {
+            String name;
+            List<Column> columns;
+            int frequency;
+        }
+
+        static class Column {
+            String name;
+            String type;
+        }
+    }
+}
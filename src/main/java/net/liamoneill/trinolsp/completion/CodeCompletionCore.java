@@ -0,0 +1,227 @@
+package net.liamoneill.trinolsp.completion;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.PrecedencePredicateTransition;
+import org.antlr.v4.runtime.atn.RuleStartState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.antlr.v4.runtime.atn.Transition;
+import org.antlr.v4.runtime.misc.IntervalSet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the tokens and grammar rules which can follow a sequence of tokens, by walking a parser's ATN (the
+ * augmented transition network ANTLR generates from the grammar) the same way antlr4-c3's CodeCompletionCore does.
+ *
+ * Only the tokens before the caret are walked, so the cost does not depend on what follows the caret. Every path
+ * through the ATN which matches those tokens is followed; at the caret the tokens each path could match next are
+ * collected. Paths which reach a preferred rule at the caret stop there and report the rule instead of its tokens
+ * (e.g. "an identifier" rather than every non-reserved keyword).
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class CodeCompletionCore {
+
+    private final ATN atn;
+    private final int startRule;
+    private final Set<Integer> preferredRules;
+    private final IntervalSet allTokens;
+
+    public CodeCompletionCore(ATN atn, int startRule, Set<Integer> preferredRules) {
+        this.atn = atn;
+        this.startRule = startRule;
+        this.preferredRules = Set.copyOf(preferredRules);
+        this.allTokens = IntervalSet.of(Token.MIN_USER_TOKEN_TYPE, atn.maxTokenType);
+    }
+
+    /**
+     * Returns the candidates at the caret, which directly follows the given (default channel) token types.
+     */
+    public Candidates collectCandidates(int[] tokenTypes) {
+        Walk walk = new Walk(tokenTypes);
+        walk.processRule(atn.ruleToStartState[startRule], 0, new ArrayDeque<>(), 0);
+        return new Candidates(walk.tokens, walk.rules);
+    }
+
+    private class Walk {
+        private final int[] tokenTypes;
+        private final Set<Integer> tokens = new LinkedHashSet<>();
+        private final Map<Integer, Set<List<Integer>>> rules = new LinkedHashMap<>();
+        // Every preferred rule reached at the caret, with its rule stack, in the order they were reached
+        private final List<PreferredRule> reached = new ArrayList<>();
+        // The walk of each rule, by where and how it was entered. Rules are entered from many places with the same
+        // input: the token positions they end at do not depend on the caller, and the preferred rules they reach are
+        // kept relative to the rule, to be reported again under the rules of each caller.
+        private final Map<RuleEntry, RuleWalk> ruleWalks = new HashMap<>();
+
+        Walk(int[] tokenTypes) {
+            this.tokenTypes = tokenTypes;
+        }
+
+        /**
+         * Walks a rule starting at a token position and returns the token positions at which it can end.
+         */
+        Set<Integer> processRule(RuleStartState startState, int tokenIndex, Deque<Integer> callStack, int precedence) {
+            boolean atCaret = tokenIndex == tokenTypes.length;
+            if (atCaret && preferredRules.contains(startState.ruleIndex)) {
+                addRule(startState.ruleIndex, outermostFirst(callStack));
+                return Set.of();
+            }
+
+            RuleEntry entry = new RuleEntry(startState.stateNumber, tokenIndex, precedence);
+            RuleWalk cached = ruleWalks.get(entry);
+            if (cached != null) {
+                List<Integer> callers = outermostFirst(callStack);
+                for (PreferredRule preferredRule : cached.preferredRules) {
+                    List<Integer> ruleStack = new ArrayList<>(callers);
+                    ruleStack.addAll(preferredRule.ruleStack);
+                    addRule(preferredRule.rule, List.copyOf(ruleStack));
+                }
+                return cached.ends;
+            }
+
+            int depth = callStack.size();
+            int firstReached = reached.size();
+            Set<Integer> ends = new HashSet<>();
+
+            callStack.push(startState.ruleIndex);
+            Deque<long[]> pipeline = new ArrayDeque<>();
+            Set<Long> visited = new HashSet<>();
+            pipeline.push(new long[] {startState.stateNumber, tokenIndex});
+            while (!pipeline.isEmpty()) {
+                long[] current = pipeline.pop();
+                ATNState state = atn.states.get((int) current[0]);
+                int index = (int) current[1];
+                if (!visited.add(current[0] << 32 | index)) {
+                    continue;
+                }
+                if (state.getStateType() == ATNState.RULE_STOP) {
+                    ends.add(index);
+                    continue;
+                }
+
+                boolean stateAtCaret = index == tokenTypes.length;
+                for (Transition transition : state.getTransitions()) {
+                    switch (transition.getSerializationType()) {
+                        case Transition.RULE -> {
+                            RuleTransition ruleTransition = (RuleTransition) transition;
+                            for (int end : processRule((RuleStartState) ruleTransition.target, index, callStack, ruleTransition.precedence)) {
+                                pipeline.push(new long[] {ruleTransition.followState.stateNumber, end});
+                            }
+                        }
+                        case Transition.PRECEDENCE -> {
+                            if (((PrecedencePredicateTransition) transition).precedence >= precedence) {
+                                pipeline.push(new long[] {transition.target.stateNumber, index});
+                            }
+                        }
+                        case Transition.WILDCARD -> {
+                            if (stateAtCaret) {
+                                addTokens(allTokens);
+                            } else {
+                                pipeline.push(new long[] {transition.target.stateNumber, index + 1});
+                            }
+                        }
+                        default -> {
+                            if (transition.isEpsilon()) {
+                                // Semantic predicates and actions are assumed to pass
+                                pipeline.push(new long[] {transition.target.stateNumber, index});
+                                continue;
+                            }
+                            IntervalSet label = transition.label();
+                            if (transition.getSerializationType() == Transition.NOT_SET) {
+                                label = label.complement(allTokens);
+                            }
+                            if (stateAtCaret) {
+                                addTokens(label);
+                            } else if (label.contains(tokenTypes[index])) {
+                                pipeline.push(new long[] {transition.target.stateNumber, index + 1});
+                            }
+                        }
+                    }
+                }
+            }
+            callStack.pop();
+
+            // Relative to this rule: the part of each rule stack from this rule inwards
+            Set<PreferredRule> reachedWithin = new LinkedHashSet<>();
+            for (PreferredRule preferredRule : reached.subList(firstReached, reached.size())) {
+                List<Integer> ruleStack = preferredRule.ruleStack;
+                reachedWithin.add(new PreferredRule(preferredRule.rule, List.copyOf(ruleStack.subList(depth, ruleStack.size()))));
+            }
+            ruleWalks.put(entry, new RuleWalk(ends, List.copyOf(reachedWithin)));
+            return ends;
+        }
+
+        private void addRule(int rule, List<Integer> ruleStack) {
+            rules.computeIfAbsent(rule, key -> new LinkedHashSet<>()).add(ruleStack);
+            reached.add(new PreferredRule(rule, ruleStack));
+        }
+
+        private List<Integer> outermostFirst(Deque<Integer> callStack) {
+            List<Integer> ruleStack = new ArrayList<>(callStack);
+            Collections.reverse(ruleStack);
+            return ruleStack;
+        }
+
+        private void addTokens(IntervalSet set) {
+            for (int tokenType : set.toList()) {
+                if (tokenType != Token.EOF) {
+                    tokens.add(tokenType);
+                }
+            }
+        }
+    }
+
+    private record RuleEntry(int state, int tokenIndex, int precedence) {
+    }
+
+    private record RuleWalk(Set<Integer> ends, List<PreferredRule> preferredRules) {
+    }
+
+    /**
+     * A preferred rule reached at the caret, with the rules it is nested in (outermost first).
+     */
+    private record PreferredRule(int rule, List<Integer> ruleStack) {
+    }
+
+    /**
+     * The token types which can directly follow the caret, and the preferred rules which can start there together
+     * with the rules they are nested in (outermost first).
+     */
+    public static class Candidates {
+        private final Set<Integer> tokens;
+        private final Map<Integer, Set<List<Integer>>> rules;
+
+        Candidates(Set<Integer> tokens, Map<Integer, Set<List<Integer>>> rules) {
+            this.tokens = Collections.unmodifiableSet(tokens);
+            this.rules = Collections.unmodifiableMap(rules);
+        }
+
+        public Set<Integer> getTokens() {
+            return tokens;
+        }
+
+        public Map<Integer, Set<List<Integer>>> getRules() {
+            return rules;
+        }
+
+        /**
+         * Returns whether a preferred rule can start at the caret within another rule.
+         */
+        public boolean hasRuleWithin(int rule, int enclosingRule) {
+            return rules.getOrDefault(rule, Set.of()).stream().anyMatch(stack -> stack.contains(enclosingRule));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package net.liamoneill.trinolsp.completion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the highest weighted names starting with a prefix, without looking at every name that matches.
+ *
+ * Names are kept in an array sorted by their lower-cased form, so the names with a prefix form one contiguous range
+ * found by binary search. A max tree over the weights of that array then yields the matches in decreasing weight
+ * order, one O(log n) step per result. Lookups cost O(log n + k log n) however many names share the prefix, and the
+ * whole index is three int arrays plus the (shared) names.
+ *
+ * Results are identified by the position of the name in the list the index was built from.
+ */
+public class RankedPrefixIndex {
+
+    // Fuzzy matches are only looked for among this many names sharing the first character of the query.
+    private static final int FUZZY_SCAN_LIMIT = 5_000;
+
+    private final String[] keys;
+    private final int[] weights;
+    private final int[] ids;
+    private final int[] maxTree;
+    private final int size;
+
+    private RankedPrefixIndex(String[] keys, int[] weights, int[] ids) {
+        this.keys = keys;
+        this.weights = weights;
+        this.ids = ids;
+        this.size = keys.length;
+
+        // maxTree[size + i] is position i, each parent holds the position of the heavier of its two children.
+        this.maxTree = new int[Math.max(1, 2 * size)];
+        for (int i = 0; i < size; i++) {
+            maxTree[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            maxTree[node] = heavier(maxTree[2 * node], maxTree[2 * node + 1]);
+        }
+    }
+
+    public static RankedPrefixIndex build(List<String> names, int[] weights) {
+        if (names.size() != weights.length) {
+            throw new IllegalArgumentException("Every name must have a weight");
+        }
+
+        Integer[] order = new Integer[names.size()];
+        String[] lowerCased = new String[names.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            lowerCased[i] = names.get(i).toLowerCase(Locale.ENGLISH);
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> lowerCased[i]));
+
+        String[] sortedKeys = new String[order.length];
+        int[] sortedWeights = new int[order.length];
+        int[] sortedIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = lowerCased[order[i]];
+            sortedWeights[i] = weights[order[i]];
+            sortedIds[i] = order[i];
+        }
+        return new RankedPrefixIndex(sortedKeys, sortedWeights, sortedIds);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} accepted names which start with a prefix (case insensitive), heaviest
+     * first and ties in name order. When fewer than {@code limit} names start with the prefix, the remaining slots are
+     * filled with fuzzy matches: names starting with the same character which contain the characters of the prefix in
+     * order (e.g. "ordid" matches "order_id").
+     */
+    public int[] search(String prefix, int limit, IntPredicate accept) {
+        String key = prefix.toLowerCase(Locale.ENGLISH);
+        int start = lowerBound(key);
+        int end = upperBound(key, start);
+
+        List<Integer> results = new ArrayList<>(Math.min(limit, end - start));
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(Comparator
+                .comparingInt((int[] range) -> -weights[range[2]])
+                .thenComparingInt(range -> range[2]));
+        if (start < end) {
+            ranges.add(new int[] {start, end, maxPosition(start, end)});
+        }
+        while (!ranges.isEmpty() && results.size() < limit) {
+            int[] range = ranges.poll();
+            int position = range[2];
+            if (accept.test(ids[position])) {
+                results.add(ids[position]);
+            }
+            if (range[0] < position) {
+                ranges.add(new int[] {range[0], position, maxPosition(range[0], position)});
+            }
+            if (position + 1 < range[1]) {
+                ranges.add(new int[] {position + 1, range[1], maxPosition(position + 1, range[1])});
+            }
+        }
+
+        if (results.size() < limit && key.length() > 1) {
+            addFuzzyMatches(key, start, end, limit, accept, results);
+        }
+
+        return results.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void addFuzzyMatches(String key, int prefixStart, int prefixEnd, int limit, IntPredicate accept, List<Integer> results) {
+        int start = lowerBound(key.substring(0, 1));
+        int end = Math.min(upperBound(key.substring(0, 1), start), start + FUZZY_SCAN_LIMIT);
+
+        List<Integer> matches = new ArrayList<>();
+        for (int position = start; position < end; position++) {
+            if ((position < prefixStart || position >= prefixEnd) && isSubsequence(key, keys[position]) && accept.test(ids[position])) {
+                matches.add(position);
+            }
+        }
+        matches.sort(Comparator.comparingInt((Integer position) -> -weights[position]).thenComparingInt(position -> position));
+        for (int position : matches) {
+            if (results.size() >= limit) {
+                break;
+            }
+            results.add(ids[position]);
+        }
+    }
+
+    private static boolean isSubsequence(String query, String candidate) {
+        int matched = 0;
+        for (int i = 0; i < candidate.length() && matched < query.length(); i++) {
+            if (candidate.charAt(i) == query.charAt(matched)) {
+                matched++;
+            }
+        }
+        return matched == query.length();
+    }
+
+    /**
+     * Returns the position of the heaviest name in [start, end).
+     */
+    private int maxPosition(int start, int end) {
+        int best = start;
+        for (int left = start + size, right = end + size; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                best = heavier(best, maxTree[left++]);
+            }
+            if ((right & 1) == 1) {
+                best = heavier(best, maxTree[--right]);
+            }
+        }
+        return best;
+    }
+
+    private int heavier(int position, int other) {
+        if (weights[other] > weights[position] || (weights[other] == weights[position] && other < position)) {
+            return other;
+        }
+        return position;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(String prefix, int start) {
+        int low = start;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,70 @@
+package net.liamoneill.trinolsp.completion;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Ints;
+import io.trino.sql.parser.CaseInsensitiveStream;
+import io.trino.sql.parser.SqlBaseLexer;
+import io.trino.sql.parser.SqlBaseParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes the completion candidates of the Trino grammar at a caret.
+ *
+ * Only the text of the statement before the caret is lexed, and its tokens are walked through the grammar by a
+ * {@link CodeCompletionCore}. Identifiers are reported as a rule, together with the rules they are nested in, so that
+ * callers can tell a table name from a column name.
+ */
+public final class SqlCompletion {
+
+    private static final CodeCompletionCore COMPLETION_CORE = new CodeCompletionCore(
+            SqlBaseParser._ATN,
+            SqlBaseParser.RULE_singleStatement,
+            Set.of(SqlBaseParser.RULE_identifier));
+
+    // Candidates only depend on the token types before the caret, which do not change while a word is being typed,
+    // or when one identifier is replaced by another.
+    private static final Cache<List<Integer>, CodeCompletionCore.Candidates> CANDIDATES_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(1_000)
+            .build();
+
+    private SqlCompletion() {
+    }
+
+    /**
+     * Returns the candidates directly following some text. The text should start at the beginning of a statement; if
+     * it contains a `;` only what follows the last one is considered.
+     */
+    public static CodeCompletionCore.Candidates candidatesAfter(String sql) {
+        List<Integer> tokenTypes = tokenTypes(sql);
+        CodeCompletionCore.Candidates candidates = CANDIDATES_CACHE.getIfPresent(tokenTypes);
+        if (candidates == null) {
+            candidates = COMPLETION_CORE.collectCandidates(Ints.toArray(tokenTypes));
+            CANDIDATES_CACHE.put(tokenTypes, candidates);
+        }
+        return candidates;
+    }
+
+    private static List<Integer> tokenTypes(String sql) {
+        SqlBaseLexer lexer = new SqlBaseLexer(new CaseInsensitiveStream(CharStreams.fromString(sql)));
+        lexer.removeErrorListeners();
+
+        List<Integer> tokenTypes = new ArrayList<>();
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            if (token.getChannel() != Token.DEFAULT_CHANNEL) {
+                continue;
+            }
+            if (token.getText().equals(";")) {
+                tokenTypes.clear();
+                continue;
+            }
+            tokenTypes.add(token.getType());
+        }
+        return tokenTypes;
+    }
+}
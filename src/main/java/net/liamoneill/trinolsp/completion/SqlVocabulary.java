@@ -0,0 +1,142 @@
+package net.liamoneill.trinolsp.completion;
+
+import io.trino.sql.parser.SqlBaseLexer;
+import org.antlr.v4.runtime.Vocabulary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The keywords and built-in functions offered by completion, each indexed by a {@link RankedPrefixIndex}.
+ *
+ * Keywords come from the Trino lexer. Weights approximate how often each keyword or function appears in typical
+ * queries, so that the few common ones are listed before the hundreds of rare ones.
+ */
+public final class SqlVocabulary {
+
+    private static final Map<String, Integer> KEYWORD_WEIGHTS = Map.ofEntries(
+            Map.entry("SELECT", 1000),
+            Map.entry("FROM", 950),
+            Map.entry("WHERE", 900),
+            Map.entry("AND", 850),
+            Map.entry("AS", 800),
+            Map.entry("JOIN", 750),
+            Map.entry("ON", 740),
+            Map.entry("GROUP", 700),
+            Map.entry("BY", 690),
+            Map.entry("ORDER", 680),
+            Map.entry("LIMIT", 670),
+            Map.entry("OR", 650),
+            Map.entry("NOT", 640),
+            Map.entry("IN", 630),
+            Map.entry("IS", 620),
+            Map.entry("NULL", 610),
+            Map.entry("LEFT", 600),
+            Map.entry("WITH", 590),
+            Map.entry("CASE", 580),
+            Map.entry("WHEN", 570),
+            Map.entry("THEN", 560),
+            Map.entry("ELSE", 550),
+            Map.entry("END", 540),
+            Map.entry("DISTINCT", 530),
+            Map.entry("HAVING", 520),
+            Map.entry("DESC", 510),
+            Map.entry("ASC", 500),
+            Map.entry("LIKE", 490),
+            Map.entry("BETWEEN", 480),
+            Map.entry("UNION", 470),
+            Map.entry("ALL", 460),
+            Map.entry("INNER", 450),
+            Map.entry("OUTER", 440),
+            Map.entry("CROSS", 430),
+            Map.entry("OVER", 420),
+            Map.entry("PARTITION", 410),
+            Map.entry("CAST", 400),
+            Map.entry("INTERVAL", 390),
+            Map.entry("EXISTS", 380),
+            Map.entry("TRUE", 370),
+            Map.entry("FALSE", 360));
+
+    // Roughly in decreasing order of use.
+    private static final List<String> FUNCTIONS = List.of(
+            "count", "sum", "avg", "min", "max", "coalesce", "date_trunc", "date_diff", "date_add", "date_format",
+            "lower", "upper", "concat", "substr", "length", "trim", "replace", "split", "round", "floor", "ceil", "abs",
+            "approx_distinct", "approx_percentile", "array_agg", "map_agg", "element_at", "cardinality", "contains",
+            "json_extract", "json_extract_scalar", "json_parse", "json_format", "regexp_like", "regexp_extract",
+            "regexp_replace", "from_unixtime", "to_unixtime", "from_iso8601_timestamp", "current_date",
+            "current_timestamp", "now", "row_number", "rank", "dense_rank", "lag", "lead", "first_value", "last_value",
+            "nullif", "greatest", "least", "if", "try", "try_cast", "format", "strpos", "lpad", "rpad", "reverse",
+            "bool_and", "bool_or", "count_if", "arbitrary", "max_by", "min_by", "stddev", "variance", "sequence",
+            "transform", "filter", "reduce", "zip", "flatten", "array_join", "array_distinct", "map_keys", "map_values",
+            "url_extract_host", "url_extract_parameter", "to_hex", "from_hex", "md5", "sha256", "year", "month", "day",
+            "hour", "minute", "second", "day_of_week", "week", "quarter");
+
+    private static final List<String> KEYWORDS;
+    private static final Map<Integer, String> TOKEN_KEYWORDS;
+    private static final RankedPrefixIndex KEYWORD_INDEX;
+    private static final RankedPrefixIndex FUNCTION_INDEX;
+
+    static {
+        List<String> keywords = new ArrayList<>();
+        Map<Integer, String> tokenKeywords = new HashMap<>();
+        Vocabulary vocabulary = SqlBaseLexer.VOCABULARY;
+        for (int tokenType = 0; tokenType <= vocabulary.getMaxTokenType(); tokenType++) {
+            String literal = vocabulary.getLiteralName(tokenType);
+            if (literal != null && literal.matches("'[A-Z_]+'")) {
+                String keyword = literal.substring(1, literal.length() - 1);
+                keywords.add(keyword);
+                tokenKeywords.put(tokenType, keyword);
+            }
+        }
+        KEYWORDS = Collections.unmodifiableList(keywords);
+        TOKEN_KEYWORDS = Collections.unmodifiableMap(tokenKeywords);
+
+        int[] keywordWeights = new int[keywords.size()];
+        for (int i = 0; i < keywordWeights.length; i++) {
+            keywordWeights[i] = KEYWORD_WEIGHTS.getOrDefault(keywords.get(i), 1);
+        }
+        KEYWORD_INDEX = RankedPrefixIndex.build(KEYWORDS, keywordWeights);
+
+        int[] functionWeights = new int[FUNCTIONS.size()];
+        for (int i = 0; i < functionWeights.length; i++) {
+            functionWeights[i] = FUNCTIONS.size() - i;
+        }
+        FUNCTION_INDEX = RankedPrefixIndex.build(FUNCTIONS, functionWeights);
+    }
+
+    private SqlVocabulary() {
+    }
+
+    /**
+     * Returns the keyword a token type stands for, or null if it is not a keyword (e.g. an operator or a literal).
+     */
+    public static String keyword(int tokenType) {
+        return TOKEN_KEYWORDS.get(tokenType);
+    }
+
+    /**
+     * Returns up to {@code limit} keywords among the allowed ones which match a prefix, most common first.
+     */
+    public static List<String> keywords(String prefix, int limit, Set<String> allowed) {
+        List<String> matches = new ArrayList<>();
+        for (int id : KEYWORD_INDEX.search(prefix, limit, id -> allowed.contains(KEYWORDS.get(id)))) {
+            matches.add(KEYWORDS.get(id));
+        }
+        return matches;
+    }
+
+    /**
+     * Returns up to {@code limit} functions which match a prefix, most common first.
+     */
+    public static List<String> functions(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        for (int id : FUNCTION_INDEX.search(prefix, limit, id -> true)) {
+            matches.add(FUNCTIONS.get(id));
+        }
+        return matches;
+    }
+}
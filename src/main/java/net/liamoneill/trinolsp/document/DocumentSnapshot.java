@@ -0,0 +1,116 @@
+package net.liamoneill.trinolsp.document;
+
+import com.google.common.base.Suppliers;
+import net.liamoneill.trinolsp.sql.ParsedScript;
+import net.liamoneill.trinolsp.sql.Parser;
+import net.liamoneill.trinolsp.sql.SemanticTokenizer;
+import net.liamoneill.trinolsp.sql.SymbolIndex;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentItem;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * An immutable version of an opened document.
+ *
+ * Applying changes returns a new snapshot, so runners and background workers can keep reading a snapshot while the
+ * message thread applies later changes. The line index, the parsed statements, the symbols and the semantic tokens
+ * are computed on first use, at most once per snapshot.
+ */
+public class DocumentSnapshot {
+
+    private final String uri;
+    private final String languageId;
+    private final int version;
+    private final Rope content;
+
+    private final Supplier<LineIndex> lineIndex;
+    private final Supplier<ParsedScript> parsedScript;
+    private final Supplier<SymbolIndex> symbolIndex;
+    private final Supplier<int[]> semanticTokens;
+
+    private DocumentSnapshot(String uri, String languageId, int version, Rope content) {
+        this.uri = uri;
+        this.languageId = languageId;
+        this.version = version;
+        this.content = content;
+        this.lineIndex = Suppliers.memoize(() -> LineIndex.of(getText()));
+        this.parsedScript = Suppliers.memoize(() -> Parser.parseScript(getText(), getLineIndex()));
+        this.symbolIndex = Suppliers.memoize(() -> SymbolIndex.of(getParsedScript()));
+        this.semanticTokens = Suppliers.memoize(() -> SemanticTokenizer.tokenize(getText(), getLineIndex()));
+    }
+
+    public static DocumentSnapshot of(TextDocumentItem textDocumentItem) {
+        return new DocumentSnapshot(
+                textDocumentItem.getUri(),
+                textDocumentItem.getLanguageId(),
+                textDocumentItem.getVersion(),
+                Rope.of(textDocumentItem.getText()));
+    }
+
+    public DocumentSnapshot applyChanges(int version, List<TextDocumentContentChangeEvent> changes) {
+        Rope updated = content;
+        for (TextDocumentContentChangeEvent change : changes) {
+            updated = applyChange(updated, change);
+        }
+        return new DocumentSnapshot(uri, languageId, version, updated);
+    }
+
+    private static Rope applyChange(Rope content, TextDocumentContentChangeEvent change) {
+        Range range = change.getRange();
+        if (range == null) {
+            // A change without a range replaces the whole document.
+            return Rope.of(change.getText());
+        }
+
+        int start = offsetAt(content, range.getStart());
+        int end = offsetAt(content, range.getEnd());
+        return content.replace(start, Math.max(start, end), change.getText());
+    }
+
+    private static int offsetAt(Rope content, Position position) {
+        return content.offsetAt(position.getLine(), position.getCharacter());
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public String getLanguageId() {
+        return languageId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Rope getContent() {
+        return content;
+    }
+
+    public String getText() {
+        return content.toString();
+    }
+
+    public LineIndex getLineIndex() {
+        return lineIndex.get();
+    }
+
+    public ParsedScript getParsedScript() {
+        return parsedScript.get();
+    }
+
+    public SymbolIndex getSymbolIndex() {
+        return symbolIndex.get();
+    }
+
+    /**
+     * Returns the encoded semantic tokens of the document. The array is shared and must not be modified.
+     */
+    public int[] getSemanticTokens() {
+        return semanticTokens.get();
+    }
+}
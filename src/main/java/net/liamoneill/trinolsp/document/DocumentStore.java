@@ -0,0 +1,55 @@
+package net.liamoneill.trinolsp.document;
+
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentItem;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The latest {@link DocumentSnapshot} of each opened document.
+ *
+ * Updates replace the snapshot of a document atomically, so readers on any thread see either the previous or the
+ * next version of a document, never a partially applied change.
+ */
+public class DocumentStore {
+
+    private final Map<String, DocumentSnapshot> documents = new ConcurrentHashMap<>();
+
+    public DocumentSnapshot open(TextDocumentItem textDocumentItem) {
+        DocumentSnapshot snapshot = DocumentSnapshot.of(textDocumentItem);
+        documents.put(snapshot.getUri(), snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Applies changes to an opened document, returning the new snapshot, or null if the document is not open.
+     */
+    public DocumentSnapshot change(String uri, Integer version, List<TextDocumentContentChangeEvent> changes) {
+        return documents.computeIfPresent(uri, (key, snapshot) ->
+                snapshot.applyChanges(version != null ? version : snapshot.getVersion() + 1, changes));
+    }
+
+    public void close(String uri) {
+        documents.remove(uri);
+    }
+
+    public void closeAll() {
+        documents.clear();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public DocumentSnapshot get(String uri) {
+        return documents.get(uri);
+    }
+
+    public Collection<DocumentSnapshot> getAll() {
+        return Collections.unmodifiableCollection(documents.values());
+    }
+}
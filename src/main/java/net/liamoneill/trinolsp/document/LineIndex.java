@@ -0,0 +1,101 @@
+package net.liamoneill.trinolsp.document;
+
+import org.eclipse.lsp4j.Position;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which each line of a text starts, for converting between offsets and LSP positions.
+ *
+ * Lines end with "\n" or "\r\n". Offsets and characters are UTF-16 code units, the same unit as Java strings and
+ * the LSP default position encoding. Build it once per text snapshot: construction scans the text, lookups are a
+ * binary search.
+ */
+public class LineIndex {
+    private final CharSequence text;
+    private final int[] lineStarts;
+    private final int length;
+
+    private LineIndex(CharSequence text, int[] lineStarts) {
+        this.text = text;
+        this.lineStarts = lineStarts;
+        this.length = text.length();
+    }
+
+    /**
+     * Indexes a text, which must not change afterwards (a String or a {@link Rope}).
+     */
+    public static LineIndex of(CharSequence text) {
+        int[] lineStarts = new int[16];
+        int lineCount = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+        return new LineIndex(text, Arrays.copyOf(lineStarts, lineCount));
+    }
+
+    public int getLineCount() {
+        return lineStarts.length;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int lineStartOffset(int line) {
+        if (line >= lineStarts.length) {
+            return length;
+        }
+        return lineStarts[Math.max(line, 0)];
+    }
+
+    public Position positionAt(int offset) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is out of bounds for length " + length);
+        }
+        int line = lineAt(offset);
+        return new Position(line, offset - lineStarts[line]);
+    }
+
+    /**
+     * Returns the (0-based) line containing an offset.
+     */
+    public int lineAt(int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Converts a position into an offset. As in the LSP specification, a character beyond the end of the line is
+     * clamped to the end of that line (before its terminator), and a line beyond the end of the text to the end of
+     * the text.
+     */
+    public int offsetAt(Position position) {
+        int line = position.getLine();
+        if (line >= lineStarts.length) {
+            return length;
+        }
+        int lineStart = lineStartOffset(line);
+        return Math.min(lineStart + Math.max(position.getCharacter(), 0), lineEndOffset(line));
+    }
+
+    /**
+     * Returns the offset just past the last character of a (0-based) line, excluding its line terminator.
+     */
+    public int lineEndOffset(int line) {
+        if (line + 1 >= lineStarts.length) {
+            return length;
+        }
+        int lineStart = lineStartOffset(line);
+        int newline = lineStarts[line + 1] - 1;
+        if (newline > lineStart && text.charAt(newline - 1) == '\r') {
+            return newline - 1;
+        }
+        return newline;
+    }
+}
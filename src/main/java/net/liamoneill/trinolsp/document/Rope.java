@@ -0,0 +1,366 @@
+package net.liamoneill.trinolsp.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable rope of UTF-16 text. Every node tracks its length and the number of newlines it contains, which
+ * doubles as a line index: converting between line/character positions and offsets, and applying a ranged edit,
+ * only touches the nodes on one root-to-leaf path.
+ *
+ * Edits return a new rope which shares all untouched nodes with the original, so a rope can be handed to a
+ * background task as a snapshot without copying.
+ */
+public abstract class Rope implements CharSequence {
+
+    private static final int MAX_LEAF_LENGTH = 1024;
+    private static final int MAX_DEPTH = 48;
+
+    private static final Rope EMPTY = new Leaf("");
+
+    private String text;
+
+    private Rope() {
+    }
+
+    public static Rope empty() {
+        return EMPTY;
+    }
+
+    public static Rope of(String text) {
+        if (text.isEmpty()) {
+            return EMPTY;
+        }
+        return build(text, 0, text.length());
+    }
+
+    private static Rope build(String text, int start, int end) {
+        if (end - start <= MAX_LEAF_LENGTH) {
+            return new Leaf(text.substring(start, end));
+        }
+        int middle = start + (end - start) / 2;
+        return new Node(build(text, start, middle), build(text, middle, end));
+    }
+
+    @Override
+    public abstract int length();
+
+    @Override
+    public abstract char charAt(int index);
+
+    /**
+     * Returns the number of '\n' characters in this rope.
+     */
+    public abstract int newlineCount();
+
+    abstract int depth();
+
+    /**
+     * Returns the offset just after the n-th (1-based) newline.
+     */
+    abstract int offsetAfterNewline(int n);
+
+    /**
+     * Returns the number of newlines in [0, offset).
+     */
+    abstract int newlinesBefore(int offset);
+
+    abstract Rope slice(int start, int end);
+
+    abstract void appendTo(StringBuilder builder);
+
+    abstract void collectLeaves(List<Leaf> leaves);
+
+    public int lineCount() {
+        return newlineCount() + 1;
+    }
+
+    public Rope insert(int offset, String text) {
+        return replace(offset, offset, text);
+    }
+
+    public Rope delete(int start, int end) {
+        return replace(start, end, "");
+    }
+
+    public Rope replace(int start, int end, String replacement) {
+        checkRange(start, end);
+        Rope result = concat(concat(slice(0, start), of(replacement)), slice(end, length()));
+        return result.depth() > MAX_DEPTH ? rebalance(result) : result;
+    }
+
+    @Override
+    public Rope subSequence(int start, int end) {
+        checkRange(start, end);
+        return slice(start, end);
+    }
+
+    /**
+     * Returns the offset of the first character of a (0-based) line, or the length of the rope if the line does not
+     * exist.
+     */
+    public int lineStartOffset(int line) {
+        if (line <= 0) {
+            return 0;
+        }
+        if (line > newlineCount()) {
+            return length();
+        }
+        return offsetAfterNewline(line);
+    }
+
+    /**
+     * Returns the offset just past the last character of a (0-based) line, excluding its line terminator.
+     */
+    public int lineEndOffset(int line) {
+        if (line >= newlineCount()) {
+            return length();
+        }
+        int newline = offsetAfterNewline(line + 1) - 1;
+        if (newline > lineStartOffset(line) && charAt(newline - 1) == '\r') {
+            return newline - 1;
+        }
+        return newline;
+    }
+
+    /**
+     * Returns the (0-based) line containing an offset.
+     */
+    public int lineAt(int offset) {
+        if (offset < 0 || offset > length()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " is out of bounds for length " + length());
+        }
+        return newlinesBefore(offset);
+    }
+
+    /**
+     * Converts a line/character position into an offset. As in the LSP specification, a character beyond the end of
+     * the line is clamped to the end of that line, and a line beyond the end of the text to the end of the text.
+     */
+    public int offsetAt(int line, int character) {
+        if (line >= lineCount()) {
+            return length();
+        }
+        int lineStart = lineStartOffset(line);
+        return Math.min(lineStart + Math.max(character, 0), lineEndOffset(line));
+    }
+
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            StringBuilder builder = new StringBuilder(length());
+            appendTo(builder);
+            result = builder.toString();
+            text = result;
+        }
+        return result;
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is out of bounds for length " + length());
+        }
+    }
+
+    private static Rope concat(Rope left, Rope right) {
+        if (left.length() == 0) {
+            return right;
+        }
+        if (right.length() == 0) {
+            return left;
+        }
+        if (left.length() + right.length() <= MAX_LEAF_LENGTH) {
+            return new Leaf(left.toString() + right);
+        }
+        // Keep typing at the end of a leaf from producing long chains of tiny leaves.
+        if (left instanceof Node && right instanceof Leaf) {
+            Node node = (Node) left;
+            if (node.right instanceof Leaf && node.right.length() + right.length() <= MAX_LEAF_LENGTH) {
+                return new Node(node.left, new Leaf(node.right.toString() + right));
+            }
+        }
+        if (left instanceof Leaf && right instanceof Node) {
+            Node node = (Node) right;
+            if (node.left instanceof Leaf && left.length() + node.left.length() <= MAX_LEAF_LENGTH) {
+                return new Node(new Leaf(left.toString() + node.left), node.right);
+            }
+        }
+        return new Node(left, right);
+    }
+
+    private static Rope rebalance(Rope rope) {
+        List<Leaf> leaves = new ArrayList<>();
+        rope.collectLeaves(leaves);
+        return merge(leaves, 0, leaves.size());
+    }
+
+    private static Rope merge(List<Leaf> leaves, int start, int end) {
+        if (end - start == 1) {
+            return leaves.get(start);
+        }
+        int middle = start + (end - start) / 2;
+        return new Node(merge(leaves, start, middle), merge(leaves, middle, end));
+    }
+
+    private static final class Leaf extends Rope {
+        private final String value;
+        private final int newlines;
+
+        private Leaf(String value) {
+            this.value = value;
+            int count = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            this.newlines = count;
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return value.charAt(index);
+        }
+
+        @Override
+        public int newlineCount() {
+            return newlines;
+        }
+
+        @Override
+        int depth() {
+            return 0;
+        }
+
+        @Override
+        int offsetAfterNewline(int n) {
+            int offset = -1;
+            for (int i = 0; i < n; i++) {
+                offset = value.indexOf('\n', offset + 1);
+            }
+            return offset + 1;
+        }
+
+        @Override
+        int newlinesBefore(int offset) {
+            int count = 0;
+            for (int i = 0; i < offset; i++) {
+                if (value.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        Rope slice(int start, int end) {
+            if (start == 0 && end == value.length()) {
+                return this;
+            }
+            return start == end ? EMPTY : new Leaf(value.substring(start, end));
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            builder.append(value);
+        }
+
+        @Override
+        void collectLeaves(List<Leaf> leaves) {
+            if (!value.isEmpty()) {
+                leaves.add(this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static final class Node extends Rope {
+        private final Rope left;
+        private final Rope right;
+        private final int length;
+        private final int newlines;
+        private final int depth;
+
+        private Node(Rope left, Rope right) {
+            this.left = left;
+            this.right = right;
+            this.length = left.length() + right.length();
+            this.newlines = left.newlineCount() + right.newlineCount();
+            this.depth = Math.max(left.depth(), right.depth()) + 1;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            int leftLength = left.length();
+            return index < leftLength ? left.charAt(index) : right.charAt(index - leftLength);
+        }
+
+        @Override
+        public int newlineCount() {
+            return newlines;
+        }
+
+        @Override
+        int depth() {
+            return depth;
+        }
+
+        @Override
+        int offsetAfterNewline(int n) {
+            int leftNewlines = left.newlineCount();
+            return n <= leftNewlines
+                    ? left.offsetAfterNewline(n)
+                    : left.length() + right.offsetAfterNewline(n - leftNewlines);
+        }
+
+        @Override
+        int newlinesBefore(int offset) {
+            int leftLength = left.length();
+            return offset <= leftLength
+                    ? left.newlinesBefore(offset)
+                    : left.newlineCount() + right.newlinesBefore(offset - leftLength);
+        }
+
+        @Override
+        Rope slice(int start, int end) {
+            if (start == 0 && end == length) {
+                return this;
+            }
+            int leftLength = left.length();
+            if (end <= leftLength) {
+                return left.slice(start, end);
+            }
+            if (start >= leftLength) {
+                return right.slice(start - leftLength, end - leftLength);
+            }
+            return concat(left.slice(start, leftLength), right.slice(0, end - leftLength));
+        }
+
+        @Override
+        void appendTo(StringBuilder builder) {
+            left.appendTo(builder);
+            right.appendTo(builder);
+        }
+
+        @Override
+        void collectLeaves(List<Leaf> leaves) {
+            left.collectLeaves(leaves);
+            right.collectLeaves(leaves);
+        }
+    }
+}
@@ -29,5 +29,18 @@ public class ApiRunner {
         http.post("/v1/rewrite", (req, res) -> {
             return new RewriteEndpoint().handle(GSON.fromJson(req.body(), RewriteEndpoint.Request.class));
         }, GSON::toJson);
+
+        http.post("/v1/rewrite:batch", (req, res) -> {
+            return new BatchRewriteEndpoint().handle(GSON.fromJson(req.body(), BatchRewriteEndpoint.Request.class));
+        }, GSON::toJson);
+
+        http.exception(IllegalArgumentException.class, (e, req, res) -> {
+            res.status(400);
+            res.body(GSON.toJson(new RewriteEndpoint.Response(null, e.getMessage())));
+        });
+
+        http.get("/v1/metrics", (req, res) -> {
+            return new MetricsEndpoint().handle();
+        }, GSON::toJson);
     }
 }
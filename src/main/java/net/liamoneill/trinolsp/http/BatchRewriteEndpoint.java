@@ -0,0 +1,85 @@
+package net.liamoneill.trinolsp.http;
+
+import net.liamoneill.trinolsp.AnalysisEngine;
+import net.liamoneill.trinolsp.RequestExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Rewrites many statements in one request, in parallel on the shared request executor. Batches run as
+ * {@link RequestExecutor.RequestType#BATCH_REWRITE}, apart from single rewrites, limited to
+ * {@code trinolsp.executor.batch_rewrite.maxConcurrent} at a time across all requests. A batch only has that many of
+ * its statements queued at once, so concurrent batches take turns instead of the first one holding the queue until
+ * all of its statements are done.
+ *
+ * Results are returned in the order of the statements. A statement which fails to parse or rewrite gets an error
+ * message in its own result and does not fail the rest of the batch.
+ */
+public class BatchRewriteEndpoint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRewriteEndpoint.class);
+
+    private static final int MAX_STATEMENTS = Integer.getInteger("trinolsp.rewrite.batchMaxStatements", 10_000);
+
+    public Response handle(Request request) {
+        List<String> statements = request.getStatements() == null ? Collections.emptyList() : request.getStatements();
+        if (statements.size() > MAX_STATEMENTS) {
+            throw new IllegalArgumentException("Too many statements in batch: " + statements.size() + " > " + MAX_STATEMENTS);
+        }
+
+        RequestExecutor requestExecutor = AnalysisEngine.getShared().getRequestExecutor();
+        int window = requestExecutor.getMaxConcurrent(RequestExecutor.RequestType.BATCH_REWRITE);
+        List<CompletableFuture<RewriteEndpoint.Response>> futures = new ArrayList<>(statements.size());
+        List<RewriteEndpoint.Response> results = new ArrayList<>(statements.size());
+        for (String sql : statements) {
+            if (futures.size() - results.size() >= window) {
+                results.add(getResult(futures.get(results.size())));
+            }
+            futures.add(requestExecutor.submit(RequestExecutor.RequestType.BATCH_REWRITE,
+                    () -> new RewriteEndpoint().rewrite(new RewriteEndpoint.Request(sql))));
+        }
+        while (results.size() < futures.size()) {
+            results.add(getResult(futures.get(results.size())));
+        }
+        return new Response(results);
+    }
+
+    private static RewriteEndpoint.Response getResult(CompletableFuture<RewriteEndpoint.Response> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            LOGGER.warn("Failed to rewrite statement", e.getCause());
+            return new RewriteEndpoint.Response(null, String.valueOf(e.getCause().getMessage()));
+        }
+    }
+
+    public static class Request {
+        private final List<String> statements;
+
+        public Request(List<String> statements) {
+            this.statements = statements;
+        }
+
+        public List<String> getStatements() {
+            return statements;
+        }
+    }
+
+    public static class Response {
+        private final List<RewriteEndpoint.Response> results;
+
+        public Response(List<RewriteEndpoint.Response> results) {
+            this.results = results;
+        }
+
+        public List<RewriteEndpoint.Response> getResults() {
+            return results;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package net.liamoneill.trinolsp.http;
+
+import net.liamoneill.trinolsp.sql.Formatter;
+import net.liamoneill.trinolsp.sql.Parser;
+
+public class MetricsEndpoint {
+
+    public Response handle() {
+        return new Response(Formatter.getVerificationStats(), RewriteEndpoint.getCacheMetrics(), Parser.getStats());
+    }
+
+    public static class Response {
+        private final Formatter.VerificationStats formatterVerification;
+        private final RewriteEndpoint.CacheMetrics rewriteCache;
+        private final Parser.ParserStats parser;
+
+        public Response(Formatter.VerificationStats formatterVerification, RewriteEndpoint.CacheMetrics rewriteCache, Parser.ParserStats parser) {
+            this.formatterVerification = formatterVerification;
+            this.rewriteCache = rewriteCache;
+            this.parser = parser;
+        }
+
+        public Formatter.VerificationStats getFormatterVerification() {
+            return formatterVerification;
+        }
+
+        public RewriteEndpoint.CacheMetrics getRewriteCache() {
+            return rewriteCache;
+        }
+
+        public Parser.ParserStats getParser() {
+            return parser;
+        }
+    }
+}
@@ -1,26 +1,95 @@
 package net.liamoneill.trinolsp.http;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import io.trino.sql.parser.ParsingException;
 import io.trino.sql.tree.Node;
 import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.AnalysisEngine;
+import net.liamoneill.trinolsp.RequestExecutor;
 import net.liamoneill.trinolsp.sql.EventViewRewriter;
 import net.liamoneill.trinolsp.sql.Formatter;
 import net.liamoneill.trinolsp.sql.Parser;
+import net.liamoneill.trinolsp.sql.SqlNormalizer;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 
+import java.util.concurrent.TimeUnit;
+
 public class RewriteEndpoint {
 
+    private static final long CACHE_MAX_CHARACTERS = Long.getLong("trinolsp.rewrite.cacheMaxCharacters", 1 << 24);
+    private static final long CACHE_TTL_SECONDS = Long.getLong("trinolsp.rewrite.cacheTtlSeconds", 600);
+    private static final int MAX_CHARACTERS = Integer.getInteger("trinolsp.rewrite.maxCharacters", 1 << 20);
+
+    // Rewritten SQL keyed by the normalized input, so queries which only differ in whitespace and comments share an
+    // entry. Only successful rewrites are cached: parse errors report positions in the original text.
+    private static final Cache<String, String> REWRITE_CACHE = newCache(CACHE_MAX_CHARACTERS, CACHE_TTL_SECONDS);
+
+    private final Cache<String, String> rewriteCache;
+
+    public RewriteEndpoint() {
+        this(REWRITE_CACHE);
+    }
+
+    RewriteEndpoint(Cache<String, String> rewriteCache) {
+        this.rewriteCache = rewriteCache;
+    }
+
+    /**
+     * Returns a cache of rewritten SQL holding at most {@code maxCharacters} characters of keys and values.
+     */
+    static Cache<String, String> newCache(long maxCharacters, long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxCharacters)
+                .weigher((String sql, String rewrittenSql) -> sql.length() + rewrittenSql.length())
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
     public Response handle(Request request) {
+        // Checked here as well, so that the error is not wrapped by the executor and is reported as a bad request
+        checkSize(request);
+        return AnalysisEngine.getShared().getRequestExecutor()
+                .submit(RequestExecutor.RequestType.REWRITE, () -> rewrite(request))
+                .join();
+    }
+
+    /**
+     * Rewrites on the calling thread, which should be a request executor thread holding a rewrite permit.
+     */
+    Response rewrite(Request request) {
+        checkSize(request);
+
+        String key = SqlNormalizer.normalize(request.getSql());
+        String cachedSql = rewriteCache.getIfPresent(key);
+        if (cachedSql != null) {
+            return new Response(cachedSql, null);
+        }
+
         Either<Statement, ParsingException> parseResult = Parser.parse(request.getSql());
         if (parseResult.isLeft()) {
             Node rewrittenTree = EventViewRewriter.rewrite(parseResult.getLeft());
             String rewrittenSql = Formatter.format(rewrittenTree);
+            rewriteCache.put(key, rewrittenSql);
             return new Response(rewrittenSql, null);
         } else {
             return new Response(null, parseResult.getRight().getErrorMessage());
         }
     }
 
+    private static void checkSize(Request request) {
+        if (request.getSql().length() > MAX_CHARACTERS) {
+            throw new IllegalArgumentException("SQL is too large to rewrite: " + request.getSql().length() + " > " + MAX_CHARACTERS + " characters");
+        }
+    }
+
+    public static CacheMetrics getCacheMetrics() {
+        CacheStats stats = REWRITE_CACHE.stats();
+        return new CacheMetrics(REWRITE_CACHE.size(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
     public static class Request {
         private final String sql;
 
@@ -50,4 +119,34 @@ public class RewriteEndpoint {
             return errorMessage;
         }
     }
+
+    public static class CacheMetrics {
+        private final long size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        public CacheMetrics(long size, long hits, long misses, long evictions) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.SqlBaseLexer;
+import io.trino.sql.parser.SqlBaseParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+
+/**
+ * The DFA ANTLR builds up while lexing and parsing, which makes later parses of similar statements much faster.
+ *
+ * The generated lexer and parser keep this cache in static fields, where it grows for as long as the process lives.
+ * Parsers are given an instance of this class instead, so that the cache can be measured and replaced by an empty
+ * one when it gets too large. Parses which are running at the time keep using the old one.
+ */
+class DfaCache {
+    private final DFA[] lexerDfa;
+    private final DFA[] parserDfa;
+    private final PredictionContextCache contextCache = new PredictionContextCache();
+
+    DfaCache() {
+        this.lexerDfa = createDfa(SqlBaseLexer._ATN);
+        this.parserDfa = createDfa(SqlBaseParser._ATN);
+    }
+
+    private static DFA[] createDfa(ATN atn) {
+        DFA[] dfa = new DFA[atn.getNumberOfDecisions()];
+        for (int decision = 0; decision < dfa.length; decision++) {
+            dfa[decision] = new DFA(atn.getDecisionState(decision), decision);
+        }
+        return dfa;
+    }
+
+    /**
+     * Makes a lexer and parser use this cache. The parser always predicts with the given mode (SLL and LL prediction
+     * share the same DFA), and fails with a {@link ParseTimeoutException} once the deadline has passed.
+     */
+    void install(SqlBaseLexer lexer, SqlBaseParser parser, PredictionMode mode, ParseDeadline deadline) {
+        lexer.setInterpreter(new LexerATNSimulator(lexer, lexer.getATN(), lexerDfa, contextCache));
+        parser.setInterpreter(new FixedModeParserATNSimulator(parser, parserDfa, contextCache, mode, deadline));
+    }
+
+    /**
+     * Returns the number of DFA states, which is what the cache's memory use grows with.
+     */
+    int getStateCount() {
+        return countStates(lexerDfa) + countStates(parserDfa);
+    }
+
+    private static int countStates(DFA[] dfa) {
+        int states = 0;
+        for (DFA decision : dfa) {
+            states += decision.states.size();
+        }
+        return states;
+    }
+
+    /**
+     * Keeps the prediction mode it was created with. Trino's SqlParser sets its own mode after the parser has been
+     * initialized, which would otherwise override it.
+     */
+    private static class FixedModeParserATNSimulator extends ParserATNSimulator {
+        private final ParseDeadline deadline;
+
+        FixedModeParserATNSimulator(SqlBaseParser parser, DFA[] dfa, PredictionContextCache contextCache, PredictionMode mode, ParseDeadline deadline) {
+            super(parser, parser.getATN(), dfa, contextCache);
+            super.setPredictionMode(mode);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void setPredictionMode(PredictionMode mode) {
+        }
+
+        @Override
+        public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+            deadline.check();
+            return super.adaptivePredict(input, decision, outerContext);
+        }
+    }
+}
@@ -2,26 +2,26 @@ package net.liamoneill.trinolsp.sql;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
-import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
 import io.trino.sql.tree.*;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.PrimitiveIterator;
-import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static java.lang.String.format;
-import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
 import static net.liamoneill.trinolsp.sql.SqlFormatter.formatName;
 import static net.liamoneill.trinolsp.sql.SqlFormatter.formatSql;
 
+/**
+ * Formats expressions by appending to a single {@link StringBuilder} shared by the whole visit, instead of returning
+ * and concatenating a string for every node, so formatting is linear in the size of the output even for deeply
+ * nested expressions.
+ */
 final class ExpressionFormatter
 {
     private static final ThreadLocal<DecimalFormat> doubleFormatter = ThreadLocal.withInitial(
@@ -31,7 +31,14 @@ final class ExpressionFormatter
 
     public static String formatExpression(Expression expression, Integer indent)
     {
-        return new Formatter().process(expression, indent);
+        StringBuilder builder = new StringBuilder();
+        formatExpression(expression, indent, builder);
+        return builder.toString();
+    }
+
+    public static void formatExpression(Expression expression, Integer indent, StringBuilder builder)
+    {
+        new Formatter(builder).process(expression, indent);
     }
 
     private static String formatIdentifier(String s)
@@ -40,10 +47,16 @@ final class ExpressionFormatter
     }
 
     public static class Formatter
-            extends AstVisitor<String, Integer>
+            extends AstVisitor<Void, Integer>
     {
+        private final StringBuilder builder;
         private boolean shouldIndent = true;
 
+        public Formatter(StringBuilder builder)
+        {
+            this.builder = builder;
+        }
+
         private Integer maybeIndent(Integer indent) {
             return shouldIndent
                     ? indent + 4
@@ -51,57 +64,61 @@ final class ExpressionFormatter
         }
 
         @Override
-        protected String visitNode(Node node, Integer indent)
+        protected Void visitNode(Node node, Integer indent)
         {
             throw new UnsupportedOperationException();
         }
 
         @Override
-        protected String visitRow(Row node, Integer indent)
+        protected Void visitRow(Row node, Integer indent)
         {
-            return "ROW (" + Joiner.on(", ").join(node.getItems().stream()
-                    .map((child) -> process(child, indent))
-                    .collect(toList())) + ")";
+            builder.append("ROW (");
+            join(node.getItems(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitExpression(Expression node, Integer indent)
+        protected Void visitExpression(Expression node, Integer indent)
         {
             throw new UnsupportedOperationException(format("not yet implemented: %s.visit%s", getClass().getName(), node.getClass().getSimpleName()));
         }
 
         @Override
-        protected String visitAtTimeZone(AtTimeZone node, Integer indent)
+        protected Void visitAtTimeZone(AtTimeZone node, Integer indent)
         {
-            return new StringBuilder()
-                    .append(process(node.getValue(), indent))
-                    .append(" AT TIME ZONE ")
-                    .append(process(node.getTimeZone(), indent)).toString();
+            process(node.getValue(), indent);
+            builder.append(" AT TIME ZONE ");
+            process(node.getTimeZone(), indent);
+            return null;
         }
 
         @Override
-        protected String visitCurrentUser(CurrentUser node, Integer indent)
+        protected Void visitCurrentUser(CurrentUser node, Integer indent)
         {
-            return "CURRENT_USER";
+            builder.append("CURRENT_USER");
+            return null;
         }
 
         @Override
-        protected String visitCurrentPath(CurrentPath node, Integer indent)
+        protected Void visitCurrentPath(CurrentPath node, Integer indent)
         {
-            return "CURRENT_PATH";
+            builder.append("CURRENT_PATH");
+            return null;
         }
 
         @Override
-        protected String visitFormat(Format node, Integer indent)
+        protected Void visitFormat(Format node, Integer indent)
         {
-            return "format(" + joinExpressions(node.getArguments()) + ")";
+            builder.append("format(");
+            joinExpressions(node.getArguments(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitCurrentTime(CurrentTime node, Integer indent)
+        protected Void visitCurrentTime(CurrentTime node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-
             builder.append(node.getFunction().getName());
 
             if (node.getPrecision() != null) {
@@ -110,116 +127,142 @@ final class ExpressionFormatter
                         .append(')');
             }
 
-            return builder.toString();
+            return null;
         }
 
         @Override
-        protected String visitExtract(Extract node, Integer indent)
+        protected Void visitExtract(Extract node, Integer indent)
         {
-            return "EXTRACT(" + node.getField() + " FROM " + process(node.getExpression(), indent) + ")";
+            builder.append("EXTRACT(").append(node.getField()).append(" FROM ");
+            process(node.getExpression(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitBooleanLiteral(BooleanLiteral node, Integer indent)
+        protected Void visitBooleanLiteral(BooleanLiteral node, Integer indent)
         {
-            return String.valueOf(node.getValue());
+            builder.append(node.getValue());
+            return null;
         }
 
         @Override
-        protected String visitStringLiteral(StringLiteral node, Integer indent)
+        protected Void visitStringLiteral(StringLiteral node, Integer indent)
         {
-            return formatStringLiteral(node.getValue());
+            appendStringLiteral(node.getValue(), builder);
+            return null;
         }
 
         @Override
-        protected String visitCharLiteral(CharLiteral node, Integer indent)
+        protected Void visitCharLiteral(CharLiteral node, Integer indent)
         {
-            return "CHAR " + formatStringLiteral(node.getValue());
+            builder.append("CHAR ");
+            appendStringLiteral(node.getValue(), builder);
+            return null;
         }
 
         @Override
-        protected String visitBinaryLiteral(BinaryLiteral node, Integer indent)
+        protected Void visitBinaryLiteral(BinaryLiteral node, Integer indent)
         {
-            return "X'" + node.toHexString() + "'";
+            builder.append("X'").append(node.toHexString()).append("'");
+            return null;
         }
 
         @Override
-        protected String visitParameter(Parameter node, Integer indent)
+        protected Void visitParameter(Parameter node, Integer indent)
         {
-            return "?";
+            builder.append("?");
+            return null;
         }
 
         @Override
-        protected String visitAllRows(AllRows node, Integer indent)
+        protected Void visitAllRows(AllRows node, Integer indent)
         {
-            return "ALL";
+            builder.append("ALL");
+            return null;
         }
 
         @Override
-        protected String visitArrayConstructor(ArrayConstructor node, Integer indent)
+        protected Void visitArrayConstructor(ArrayConstructor node, Integer indent)
         {
-            ImmutableList.Builder<String> valueStrings = ImmutableList.builder();
-            for (Expression value : node.getValues()) {
-                valueStrings.add(formatSql(value));
+            builder.append("ARRAY[");
+            Iterator<Expression> values = node.getValues().iterator();
+            while (values.hasNext()) {
+                process(values.next(), 0);
+                if (values.hasNext()) {
+                    builder.append(",");
+                }
             }
-            return "ARRAY[" + Joiner.on(",").join(valueStrings.build()) + "]";
+            builder.append("]");
+            return null;
         }
 
         @Override
-        protected String visitSubscriptExpression(SubscriptExpression node, Integer indent)
+        protected Void visitSubscriptExpression(SubscriptExpression node, Integer indent)
         {
-            return formatSql(node.getBase()) + "[" + formatSql(node.getIndex()) + "]";
+            process(node.getBase(), 0);
+            builder.append("[");
+            process(node.getIndex(), 0);
+            builder.append("]");
+            return null;
         }
 
         @Override
-        protected String visitLongLiteral(LongLiteral node, Integer indent)
+        protected Void visitLongLiteral(LongLiteral node, Integer indent)
         {
-            return Long.toString(node.getValue());
+            builder.append(node.getValue());
+            return null;
         }
 
         @Override
-        protected String visitDoubleLiteral(DoubleLiteral node, Integer indent)
+        protected Void visitDoubleLiteral(DoubleLiteral node, Integer indent)
         {
-            return doubleFormatter.get().format(node.getValue());
+            builder.append(doubleFormatter.get().format(node.getValue()));
+            return null;
         }
 
         @Override
-        protected String visitDecimalLiteral(DecimalLiteral node, Integer indent)
+        protected Void visitDecimalLiteral(DecimalLiteral node, Integer indent)
         {
             // TODO return node value without "DECIMAL '..'" when FeaturesConfig#parseDecimalLiteralsAsDouble switch is removed
-            return "DECIMAL '" + node.getValue() + "'";
+            builder.append("DECIMAL '").append(node.getValue()).append("'");
+            return null;
         }
 
         @Override
-        protected String visitGenericLiteral(GenericLiteral node, Integer indent)
+        protected Void visitGenericLiteral(GenericLiteral node, Integer indent)
         {
-            return node.getType() + " " + formatStringLiteral(node.getValue());
+            builder.append(node.getType()).append(" ");
+            appendStringLiteral(node.getValue(), builder);
+            return null;
         }
 
         @Override
-        protected String visitTimeLiteral(TimeLiteral node, Integer indent)
+        protected Void visitTimeLiteral(TimeLiteral node, Integer indent)
         {
-            return "TIME '" + node.getValue() + "'";
+            builder.append("TIME '").append(node.getValue()).append("'");
+            return null;
         }
 
         @Override
-        protected String visitTimestampLiteral(TimestampLiteral node, Integer indent)
+        protected Void visitTimestampLiteral(TimestampLiteral node, Integer indent)
         {
-            return "TIMESTAMP '" + node.getValue() + "'";
+            builder.append("TIMESTAMP '").append(node.getValue()).append("'");
+            return null;
         }
 
         @Override
-        protected String visitNullLiteral(NullLiteral node, Integer indent)
+        protected Void visitNullLiteral(NullLiteral node, Integer indent)
         {
-            return "null";
+            builder.append("null");
+            return null;
         }
 
         @Override
-        protected String visitIntervalLiteral(IntervalLiteral node, Integer indent)
+        protected Void visitIntervalLiteral(IntervalLiteral node, Integer indent)
         {
             String sign = (node.getSign() == IntervalLiteral.Sign.NEGATIVE) ? " -" : "";
-            StringBuilder builder = new StringBuilder()
-                    .append("INTERVAL")
+            builder.append("INTERVAL")
                     .append(sign)
                     .append(" '").append(node.getValue()).append("' ")
                     .append(node.getStartField());
@@ -227,76 +270,89 @@ final class ExpressionFormatter
             if (node.getEndField().isPresent()) {
                 builder.append(" TO ").append(node.getEndField().get());
             }
-            return builder.toString();
+            return null;
         }
 
         @Override
-        protected String visitSubqueryExpression(SubqueryExpression node, Integer indent)
+        protected Void visitSubqueryExpression(SubqueryExpression node, Integer indent)
         {
-            return "(" + formatSql(node.getQuery()) + ")";
+            builder.append("(");
+            formatSql(node.getQuery(), builder);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitExists(ExistsPredicate node, Integer indent)
+        protected Void visitExists(ExistsPredicate node, Integer indent)
         {
-            return "(EXISTS " + formatSql(node.getSubquery()) + ")";
+            builder.append("(EXISTS ");
+            formatSql(node.getSubquery(), builder);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitIdentifier(Identifier node, Integer indent)
+        protected Void visitIdentifier(Identifier node, Integer indent)
         {
             if (!node.isDelimited()) {
-                return node.getValue();
+                builder.append(node.getValue());
             }
             else {
-                return '"' + node.getValue().replace("\"", "\"\"") + '"';
+                builder.append('"').append(node.getValue().replace("\"", "\"\"")).append('"');
             }
+            return null;
         }
 
         @Override
-        protected String visitLambdaArgumentDeclaration(LambdaArgumentDeclaration node, Integer indent)
+        protected Void visitLambdaArgumentDeclaration(LambdaArgumentDeclaration node, Integer indent)
         {
-            return formatExpression(node.getName(), indent);
+            process(node.getName(), indent);
+            return null;
         }
 
         @Override
-        protected String visitSymbolReference(SymbolReference node, Integer indent)
+        protected Void visitSymbolReference(SymbolReference node, Integer indent)
         {
-            return formatIdentifier(node.getName());
+            builder.append(formatIdentifier(node.getName()));
+            return null;
         }
 
         @Override
-        protected String visitDereferenceExpression(DereferenceExpression node, Integer indent)
+        protected Void visitDereferenceExpression(DereferenceExpression node, Integer indent)
         {
-            String baseString = process(node.getBase(), indent);
-            return baseString + "." + process(node.getField());
+            process(node.getBase(), indent);
+            builder.append(".");
+            process(node.getField());
+            return null;
         }
 
         @Override
-        public String visitFieldReference(FieldReference node, Integer indent)
+        public Void visitFieldReference(FieldReference node, Integer indent)
         {
             // add colon so this won't parse
-            return ":input(" + node.getFieldIndex() + ")";
+            builder.append(":input(").append(node.getFieldIndex()).append(")");
+            return null;
         }
 
         @Override
-        protected String visitFunctionCall(FunctionCall node, Integer indent)
+        protected Void visitFunctionCall(FunctionCall node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
+            builder.append(formatName(node.getName()))
+                    .append('(');
 
-            String arguments = joinExpressions(node.getArguments());
+            if (node.isDistinct()) {
+                builder.append("DISTINCT ");
+            }
             if (node.getArguments().isEmpty() && "count".equalsIgnoreCase(node.getName().getSuffix())) {
-                arguments = "*";
+                builder.append("*");
             }
-            if (node.isDistinct()) {
-                arguments = "DISTINCT " + arguments;
+            else {
+                joinExpressions(node.getArguments(), indent);
             }
 
-            builder.append(formatName(node.getName()))
-                    .append('(').append(arguments);
-
             if (node.getOrderBy().isPresent()) {
-                builder.append(' ').append(formatOrderBy(node.getOrderBy().get(), indent));
+                builder.append(' ');
+                appendOrderBy(node.getOrderBy().get(), indent);
             }
 
             builder.append(')');
@@ -313,150 +369,170 @@ final class ExpressionFormatter
             });
 
             if (node.getFilter().isPresent()) {
-                builder.append(" FILTER ").append(visitFilter(node.getFilter().get(), indent));
+                builder.append(" FILTER ");
+                visitFilter(node.getFilter().get(), indent);
             }
 
             if (node.getWindow().isPresent()) {
-                builder.append(" OVER ").append(formatWindow(node.getWindow().get(), indent));
+                builder.append(" OVER ");
+                appendWindow(node.getWindow().get(), indent);
             }
 
-            return builder.toString();
+            return null;
         }
 
         @Override
-        protected String visitLambdaExpression(LambdaExpression node, Integer indent)
+        protected Void visitLambdaExpression(LambdaExpression node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-
             builder.append('(');
             Joiner.on(", ").appendTo(builder, node.getArguments());
             builder.append(") -> ");
-            builder.append(process(node.getBody(), indent));
-            return builder.toString();
+            process(node.getBody(), indent);
+            return null;
         }
 
         @Override
-        protected String visitBindExpression(BindExpression node, Integer indent)
+        protected Void visitBindExpression(BindExpression node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-
             builder.append("\"$INTERNAL$BIND\"(");
             for (Expression value : node.getValues()) {
-                builder.append(process(value, indent))
-                        .append(", ");
+                process(value, indent);
+                builder.append(", ");
             }
-            builder.append(process(node.getFunction(), indent))
-                    .append(")");
-            return builder.toString();
+            process(node.getFunction(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitLogicalBinaryExpression(LogicalBinaryExpression node, Integer indent)
+        protected Void visitLogicalBinaryExpression(LogicalBinaryExpression node, Integer indent)
         {
-            return formatBinaryExpression(node.getOperator().toString(), node.getLeft(), node.getRight(), indent);
+            formatBinaryExpression(node.getOperator().toString(), node.getLeft(), node.getRight(), indent);
+            return null;
         }
 
         @Override
-        protected String visitNotExpression(NotExpression node, Integer indent)
+        protected Void visitNotExpression(NotExpression node, Integer indent)
         {
-            return "(NOT " + process(node.getValue(), indent) + ")";
+            builder.append("(NOT ");
+            process(node.getValue(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitComparisonExpression(ComparisonExpression node, Integer indent)
+        protected Void visitComparisonExpression(ComparisonExpression node, Integer indent)
         {
-            return formatBinaryExpression(node.getOperator().getValue(), node.getLeft(), node.getRight(), indent);
+            formatBinaryExpression(node.getOperator().getValue(), node.getLeft(), node.getRight(), indent);
+            return null;
         }
 
         @Override
-        protected String visitIsNullPredicate(IsNullPredicate node, Integer indent)
+        protected Void visitIsNullPredicate(IsNullPredicate node, Integer indent)
         {
-            return process(node.getValue(), indent) + " IS NULL";
+            process(node.getValue(), indent);
+            builder.append(" IS NULL");
+            return null;
         }
 
         @Override
-        protected String visitIsNotNullPredicate(IsNotNullPredicate node, Integer indent)
+        protected Void visitIsNotNullPredicate(IsNotNullPredicate node, Integer indent)
         {
-            return process(node.getValue(), indent) + " IS NOT NULL";
+            process(node.getValue(), indent);
+            builder.append(" IS NOT NULL");
+            return null;
         }
 
         @Override
-        protected String visitNullIfExpression(NullIfExpression node, Integer indent)
+        protected Void visitNullIfExpression(NullIfExpression node, Integer indent)
         {
-            return "NULLIF(" + process(node.getFirst(), indent) + ", " + process(node.getSecond(), indent) + ')';
+            builder.append("NULLIF(");
+            process(node.getFirst(), indent);
+            builder.append(", ");
+            process(node.getSecond(), indent);
+            builder.append(')');
+            return null;
         }
 
         @Override
-        protected String visitIfExpression(IfExpression node, Integer indent)
+        protected Void visitIfExpression(IfExpression node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-            builder.append("IF(")
-                    .append(process(node.getCondition(), indent))
-                    .append(", ")
-                    .append(process(node.getTrueValue(), indent));
+            builder.append("IF(");
+            process(node.getCondition(), indent);
+            builder.append(", ");
+            process(node.getTrueValue(), indent);
             if (node.getFalseValue().isPresent()) {
-                builder.append(", ")
-                        .append(process(node.getFalseValue().get(), indent));
+                builder.append(", ");
+                process(node.getFalseValue().get(), indent);
             }
             builder.append(")");
-            return builder.toString();
+            return null;
         }
 
         @Override
-        protected String visitTryExpression(TryExpression node, Integer indent)
+        protected Void visitTryExpression(TryExpression node, Integer indent)
         {
-            return "TRY(" + process(node.getInnerExpression(), indent) + ")";
+            builder.append("TRY(");
+            process(node.getInnerExpression(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitCoalesceExpression(CoalesceExpression node, Integer indent)
+        protected Void visitCoalesceExpression(CoalesceExpression node, Integer indent)
         {
-            return "COALESCE(" + joinExpressions(node.getOperands()) + ")";
+            builder.append("COALESCE(");
+            joinExpressions(node.getOperands(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitArithmeticUnary(ArithmeticUnaryExpression node, Integer indent)
+        protected Void visitArithmeticUnary(ArithmeticUnaryExpression node, Integer indent)
         {
-            String value = process(node.getValue(), indent);
-
             switch (node.getSign()) {
                 case MINUS:
                     // Unary is ambiguous with respect to negative numbers. "-1" parses as a number, but "-(1)" parses as "unaryMinus(number)"
                     // The parentheses are needed to ensure the parsing roundtrips properly.
-                    return "-(" + value + ")";
+                    builder.append("-(");
+                    process(node.getValue(), indent);
+                    builder.append(")");
+                    return null;
                 case PLUS:
-                    return "+" + value;
+                    builder.append("+");
+                    process(node.getValue(), indent);
+                    return null;
             }
             throw new UnsupportedOperationException("Unsupported sign: " + node.getSign());
         }
 
         @Override
-        protected String visitArithmeticBinary(ArithmeticBinaryExpression node, Integer indent)
+        protected Void visitArithmeticBinary(ArithmeticBinaryExpression node, Integer indent)
         {
-            return formatBinaryExpression(node.getOperator().getValue(), node.getLeft(), node.getRight(), indent);
+            formatBinaryExpression(node.getOperator().getValue(), node.getLeft(), node.getRight(), indent);
+            return null;
         }
 
         @Override
-        protected String visitLikePredicate(LikePredicate node, Integer indent)
+        protected Void visitLikePredicate(LikePredicate node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-
-            builder.append(process(node.getValue(), indent))
-                    .append(" LIKE ")
-                    .append(process(node.getPattern(), indent));
+            process(node.getValue(), indent);
+            builder.append(" LIKE ");
+            process(node.getPattern(), indent);
 
-            node.getEscape().ifPresent(escape -> builder.append(" ESCAPE ")
-                    .append(process(escape, indent)));
+            node.getEscape().ifPresent(escape -> {
+                builder.append(" ESCAPE ");
+                process(escape, indent);
+            });
 
-            return builder.toString();
+            return null;
         }
 
         @Override
-        protected String visitAllColumns(AllColumns node, Integer indent)
+        protected Void visitAllColumns(AllColumns node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
             if (node.getTarget().isPresent()) {
-                builder.append(process(node.getTarget().get(), indent));
+                process(node.getTarget().get(), indent);
                 builder.append(".*");
             }
             else {
@@ -465,166 +541,187 @@ final class ExpressionFormatter
 
             if (!node.getAliases().isEmpty()) {
                 builder.append(" AS (");
-                Joiner.on(", ").appendTo(builder, node.getAliases().stream()
-                        .map(alias -> process(alias, indent))
-                        .collect(toList()));
+                join(node.getAliases(), indent);
                 builder.append(")");
             }
 
-            return builder.toString();
+            return null;
         }
 
         @Override
-        public String visitCast(Cast node, Integer indent)
+        public Void visitCast(Cast node, Integer indent)
         {
-            return (node.isSafe() ? "TRY_CAST" : "CAST") +
-                    "(" + process(node.getExpression(), indent) + " AS " + process(node.getType(), indent) + ")";
+            builder.append(node.isSafe() ? "TRY_CAST" : "CAST")
+                    .append("(");
+            process(node.getExpression(), indent);
+            builder.append(" AS ");
+            process(node.getType(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitSearchedCaseExpression(SearchedCaseExpression node, Integer indent)
+        protected Void visitSearchedCaseExpression(SearchedCaseExpression node, Integer indent)
         {
-            ImmutableList.Builder<String> parts = ImmutableList.builder();
-            parts.add("CASE");
+            builder.append("(CASE");
             for (WhenClause whenClause : node.getWhenClauses()) {
-                parts.add(process(whenClause, indent));
+                builder.append(' ');
+                process(whenClause, indent);
             }
 
             node.getDefaultValue()
-                    .ifPresent((value) -> parts.add("ELSE").add(process(value, indent)));
-
-            parts.add("END");
+                    .ifPresent((value) -> {
+                        builder.append(" ELSE ");
+                        process(value, indent);
+                    });
 
-            return "(" + Joiner.on(' ').join(parts.build()) + ")";
+            builder.append(" END)");
+            return null;
         }
 
         @Override
-        protected String visitSimpleCaseExpression(SimpleCaseExpression node, Integer indent)
+        protected Void visitSimpleCaseExpression(SimpleCaseExpression node, Integer indent)
         {
-            ImmutableList.Builder<String> parts = ImmutableList.builder();
-
-            parts.add("CASE")
-                    .add(process(node.getOperand(), indent));
+            builder.append("(CASE ");
+            process(node.getOperand(), indent);
 
             for (WhenClause whenClause : node.getWhenClauses()) {
-                parts.add(process(whenClause, indent));
+                builder.append(' ');
+                process(whenClause, indent);
             }
 
             node.getDefaultValue()
-                    .ifPresent((value) -> parts.add("ELSE").add(process(value, indent)));
+                    .ifPresent((value) -> {
+                        builder.append(" ELSE ");
+                        process(value, indent);
+                    });
 
-            parts.add("END");
-
-            return "(" + Joiner.on(' ').join(parts.build()) + ")";
+            builder.append(" END)");
+            return null;
         }
 
         @Override
-        protected String visitWhenClause(WhenClause node, Integer indent)
+        protected Void visitWhenClause(WhenClause node, Integer indent)
         {
-            return "WHEN " + process(node.getOperand(), indent) + " THEN " + process(node.getResult(), indent);
+            builder.append("WHEN ");
+            process(node.getOperand(), indent);
+            builder.append(" THEN ");
+            process(node.getResult(), indent);
+            return null;
         }
 
         @Override
-        protected String visitBetweenPredicate(BetweenPredicate node, Integer indent)
+        protected Void visitBetweenPredicate(BetweenPredicate node, Integer indent)
         {
-            return process(node.getValue(), indent) + " BETWEEN " +
-                    process(node.getMin(), indent) + " AND " + process(node.getMax(), indent);
+            process(node.getValue(), indent);
+            builder.append(" BETWEEN ");
+            process(node.getMin(), indent);
+            builder.append(" AND ");
+            process(node.getMax(), indent);
+            return null;
         }
 
         @Override
-        protected String visitInPredicate(InPredicate node, Integer indent)
+        protected Void visitInPredicate(InPredicate node, Integer indent)
         {
-            return process(node.getValue(), indent) + " IN " + process(node.getValueList(), indent);
+            process(node.getValue(), indent);
+            builder.append(" IN ");
+            process(node.getValueList(), indent);
+            return null;
         }
 
         @Override
-        protected String visitInListExpression(InListExpression node, Integer indent)
+        protected Void visitInListExpression(InListExpression node, Integer indent)
         {
-            return joinExpressions(node.getValues());
+            builder.append("(");
+            joinExpressions(node.getValues(), indent);
+            builder.append(")");
+            return null;
         }
 
-        private String visitFilter(Expression node, Integer indent)
+        private void visitFilter(Expression node, Integer indent)
         {
-            return "WHERE " + process(node, indent);
+            builder.append("WHERE ");
+            process(node, indent);
         }
 
         @Override
-        protected String visitQuantifiedComparisonExpression(QuantifiedComparisonExpression node, Integer indent)
+        protected Void visitQuantifiedComparisonExpression(QuantifiedComparisonExpression node, Integer indent)
         {
-            return new StringBuilder()
-                    .append("(")
-                    .append(process(node.getValue(), indent))
-                    .append(' ')
+            builder.append("(");
+            process(node.getValue(), indent);
+            builder.append(' ')
                     .append(node.getOperator().getValue())
                     .append(' ')
                     .append(node.getQuantifier().toString())
-                    .append(' ')
-                    .append(process(node.getSubquery(), indent))
-                    .append(")")
-                    .toString();
+                    .append(' ');
+            process(node.getSubquery(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitGroupingOperation(GroupingOperation node, Integer indent)
+        protected Void visitGroupingOperation(GroupingOperation node, Integer indent)
         {
-            return "GROUPING (" + joinExpressions(node.getGroupingColumns()) + ")";
+            builder.append("GROUPING (");
+            joinExpressions(node.getGroupingColumns(), indent);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitRowDataType(RowDataType node, Integer indent)
+        protected Void visitRowDataType(RowDataType node, Integer indent)
         {
-            return node.getFields().stream()
-                    .map(this::process)
-                    .collect(joining(", ", "ROW(", ")"));
+            builder.append("ROW(");
+            join(node.getFields(), null);
+            builder.append(")");
+            return null;
         }
 
         @Override
-        protected String visitRowField(RowDataType.Field node, Integer indent)
+        protected Void visitRowField(RowDataType.Field node, Integer indent)
         {
-            StringBuilder result = new StringBuilder();
-
             if (node.getName().isPresent()) {
-                result.append(process(node.getName().get(), indent));
-                result.append(" ");
+                process(node.getName().get(), indent);
+                builder.append(" ");
             }
 
-            result.append(process(node.getType(), indent));
+            process(node.getType(), indent);
 
-            return result.toString();
+            return null;
         }
 
         @Override
-        protected String visitGenericDataType(GenericDataType node, Integer indent)
+        protected Void visitGenericDataType(GenericDataType node, Integer indent)
         {
-            StringBuilder result = new StringBuilder();
-            result.append(node.getName());
+            builder.append(node.getName());
 
             if (!node.getArguments().isEmpty()) {
-                result.append(node.getArguments().stream()
-                        .map(this::process)
-                        .collect(joining(", ", "(", ")")));
+                builder.append("(");
+                join(node.getArguments(), null);
+                builder.append(")");
             }
 
-            return result.toString();
+            return null;
         }
 
         @Override
-        protected String visitTypeParameter(TypeParameter node, Integer indent)
+        protected Void visitTypeParameter(TypeParameter node, Integer indent)
         {
-            return process(node.getValue(), indent);
+            process(node.getValue(), indent);
+            return null;
         }
 
         @Override
-        protected String visitNumericTypeParameter(NumericParameter node, Integer indent)
+        protected Void visitNumericTypeParameter(NumericParameter node, Integer indent)
         {
-            return node.getValue();
+            builder.append(node.getValue());
+            return null;
         }
 
         @Override
-        protected String visitIntervalDataType(IntervalDayTimeDataType node, Integer indent)
+        protected Void visitIntervalDataType(IntervalDayTimeDataType node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-
             builder.append("INTERVAL ");
             builder.append(node.getFrom());
             if (node.getFrom() != node.getTo()) {
@@ -632,14 +729,12 @@ final class ExpressionFormatter
                         .append(node.getTo());
             }
 
-            return builder.toString();
+            return null;
         }
 
         @Override
-        protected String visitDateTimeType(DateTimeDataType node, Integer indent)
+        protected Void visitDateTimeType(DateTimeDataType node, Integer indent)
         {
-            StringBuilder builder = new StringBuilder();
-
             builder.append(node.getType().toString().toLowerCase(Locale.ENGLISH)); // TODO: normalize to upper case according to standard SQL semantics
             if (node.getPrecision().isPresent()) {
                 builder.append("(")
@@ -651,40 +746,241 @@ final class ExpressionFormatter
                 builder.append(" with time zone"); // TODO: normalize to upper case according to standard SQL semantics
             }
 
-            return builder.toString();
+            return null;
         }
 
-        private String formatBinaryExpression(String operator, Expression left, Expression right, Integer indent)
+        private void formatBinaryExpression(String operator, Expression left, Expression right, Integer indent)
         {
+            process(left, indent);
             switch (operator) {
                 case "AND":
                 case "OR":
-                    if (!shouldIndent) {
-                        return process(left, indent) + ' ' + operator + ' ' + process(right, indent);
+                    if (shouldIndent) {
+                        builder.append('\n');
+                        appendIndent(indent);
+                        break;
                     }
-                    return process(left, indent) + '\n' + Strings.repeat("  ", indent) + operator + ' ' + process(right, indent);
+                    builder.append(' ');
+                    break;
 
                 default:
-                    return process(left, indent) + ' ' + operator + ' ' + process(right, indent);
+                    builder.append(' ');
+            }
+            builder.append(operator).append(' ');
+            process(right, indent);
+        }
+
+        private void appendIndent(int indent)
+        {
+            for (int i = 0; i < indent; i++) {
+                builder.append("  ");
+            }
+        }
+
+        private void joinExpressions(List<Expression> expressions, Integer indent)
+        {
+            join(expressions, indent);
+        }
+
+        private void join(List<? extends Node> nodes, Integer indent)
+        {
+            Iterator<? extends Node> iterator = nodes.iterator();
+            while (iterator.hasNext()) {
+                process(iterator.next(), indent);
+                if (iterator.hasNext()) {
+                    builder.append(", ");
+                }
+            }
+        }
+
+        private void appendOrderBy(OrderBy orderBy, Integer indent)
+        {
+            builder.append("ORDER BY ");
+            Iterator<SortItem> sortItems = orderBy.getSortItems().iterator();
+            while (sortItems.hasNext()) {
+                appendSortItem(sortItems.next(), indent);
+                if (sortItems.hasNext()) {
+                    builder.append(", ");
+                }
+            }
+        }
+
+        private void appendSortItem(SortItem input, Integer indent)
+        {
+            process(input.getSortKey(), indent);
+
+            switch (input.getOrdering()) {
+                case ASCENDING:
+                    builder.append(" ASC");
+                    break;
+                case DESCENDING:
+                    builder.append(" DESC");
+                    break;
+                default:
+                    throw new UnsupportedOperationException("unknown ordering: " + input.getOrdering());
+            }
+
+            switch (input.getNullOrdering()) {
+                case FIRST:
+                    builder.append(" NULLS FIRST");
+                    break;
+                case LAST:
+                    builder.append(" NULLS LAST");
+                    break;
+                case UNDEFINED:
+                    // no op
+                    break;
+                default:
+                    throw new UnsupportedOperationException("unknown null ordering: " + input.getNullOrdering());
+            }
+        }
+
+        private void appendWindow(Window window, Integer indent)
+        {
+            if (window instanceof WindowReference) {
+                process(((WindowReference) window).getName(), indent);
+                return;
+            }
+
+            appendWindowSpecification((WindowSpecification) window, indent);
+        }
+
+        private void appendWindowSpecification(WindowSpecification windowSpecification, Integer indent)
+        {
+            builder.append('(');
+            boolean first = true;
+
+            if (windowSpecification.getExistingWindowName().isPresent()) {
+                process(windowSpecification.getExistingWindowName().get(), indent);
+                first = false;
+            }
+            if (!windowSpecification.getPartitionBy().isEmpty()) {
+                if (!first) {
+                    builder.append(' ');
+                }
+                builder.append("PARTITION BY ");
+                joinExpressions(windowSpecification.getPartitionBy(), indent);
+                first = false;
+            }
+            if (windowSpecification.getOrderBy().isPresent()) {
+                if (!first) {
+                    builder.append(' ');
+                }
+                appendOrderBy(windowSpecification.getOrderBy().get(), indent);
+                first = false;
+            }
+            if (windowSpecification.getFrame().isPresent()) {
+                if (!first) {
+                    builder.append(' ');
+                }
+                appendFrame(windowSpecification.getFrame().get(), indent);
             }
+
+            builder.append(')');
         }
 
-        private String joinExpressions(List<Expression> expressions)
+        private void appendFrame(WindowFrame windowFrame, Integer indent)
         {
-            return Joiner.on(", ").join(expressions.stream()
-                    .map((e) -> process(e, null))
-                    .iterator());
+            builder.append(windowFrame.getType().toString())
+                    .append(' ');
+
+            if (windowFrame.getEnd().isPresent()) {
+                builder.append("BETWEEN ");
+                appendFrameBound(windowFrame.getStart(), indent);
+                builder.append(" AND ");
+                appendFrameBound(windowFrame.getEnd().get(), indent);
+            }
+            else {
+                appendFrameBound(windowFrame.getStart(), indent);
+            }
+        }
+
+        private void appendFrameBound(FrameBound frameBound, Integer indent)
+        {
+            switch (frameBound.getType()) {
+                case UNBOUNDED_PRECEDING:
+                    builder.append("UNBOUNDED PRECEDING");
+                    return;
+                case PRECEDING:
+                    process(frameBound.getValue().get(), indent);
+                    builder.append(" PRECEDING");
+                    return;
+                case CURRENT_ROW:
+                    builder.append("CURRENT ROW");
+                    return;
+                case FOLLOWING:
+                    process(frameBound.getValue().get(), indent);
+                    builder.append(" FOLLOWING");
+                    return;
+                case UNBOUNDED_FOLLOWING:
+                    builder.append("UNBOUNDED FOLLOWING");
+                    return;
+            }
+            throw new IllegalArgumentException("unhandled type: " + frameBound.getType());
+        }
+
+        private void appendGroupBy(List<GroupingElement> groupingElements, Integer indent)
+        {
+            Iterator<GroupingElement> iterator = groupingElements.iterator();
+            while (iterator.hasNext()) {
+                GroupingElement groupingElement = iterator.next();
+                if (groupingElement instanceof SimpleGroupBy) {
+                    List<Expression> columns = groupingElement.getExpressions();
+                    if (columns.size() == 1) {
+                        process(getOnlyElement(columns), indent);
+                    }
+                    else {
+                        appendGroupingSet(columns, indent);
+                    }
+                }
+                else if (groupingElement instanceof GroupingSets) {
+                    builder.append("GROUPING SETS (");
+                    Iterator<List<Expression>> sets = ((GroupingSets) groupingElement).getSets().iterator();
+                    while (sets.hasNext()) {
+                        appendGroupingSet(sets.next(), indent);
+                        if (sets.hasNext()) {
+                            builder.append(", ");
+                        }
+                    }
+                    builder.append(")");
+                }
+                else if (groupingElement instanceof Cube) {
+                    builder.append("CUBE ");
+                    appendGroupingSet(groupingElement.getExpressions(), indent);
+                }
+                else if (groupingElement instanceof Rollup) {
+                    builder.append("ROLLUP ");
+                    appendGroupingSet(groupingElement.getExpressions(), indent);
+                }
+                if (iterator.hasNext()) {
+                    builder.append(", ");
+                }
+            }
+        }
+
+        private void appendGroupingSet(List<Expression> groupingSet, Integer indent)
+        {
+            builder.append("(");
+            joinExpressions(groupingSet, indent);
+            builder.append(")");
         }
     }
 
     static String formatStringLiteral(String s)
+    {
+        StringBuilder builder = new StringBuilder();
+        appendStringLiteral(s, builder);
+        return builder.toString();
+    }
+
+    static void appendStringLiteral(String s, StringBuilder builder)
     {
         s = s.replace("'", "''");
         if (CharMatcher.inRange((char) 0x20, (char) 0x7E).matchesAllOf(s)) {
-            return "'" + s + "'";
+            builder.append("'").append(s).append("'");
+            return;
         }
 
-        StringBuilder builder = new StringBuilder();
         builder.append("U&'");
         PrimitiveIterator.OfInt iterator = s.codePoints().iterator();
         while (iterator.hasNext()) {
@@ -707,166 +1003,36 @@ final class ExpressionFormatter
             }
         }
         builder.append("'");
-        return builder.toString();
     }
 
     public static String formatOrderBy(OrderBy orderBy, Integer indent)
     {
-        return "ORDER BY " + formatSortItems(orderBy.getSortItems(), indent);
-    }
-
-    private static String formatSortItems(List<SortItem> sortItems, Integer indent)
-    {
-        return Joiner.on(", ").join(sortItems.stream()
-                .map(sortItemFormatterFunction(indent))
-                .iterator());
+        StringBuilder builder = new StringBuilder();
+        formatOrderBy(orderBy, indent, builder);
+        return builder.toString();
     }
 
-    private static String formatWindow(Window window, Integer indent)
+    public static void formatOrderBy(OrderBy orderBy, Integer indent, StringBuilder builder)
     {
-        if (window instanceof WindowReference) {
-            return formatExpression(((WindowReference) window).getName(), indent);
-        }
-
-        return formatWindowSpecification((WindowSpecification) window, indent);
+        new Formatter(builder).appendOrderBy(orderBy, indent);
     }
 
     static String formatWindowSpecification(WindowSpecification windowSpecification, Integer indent)
-    {
-        List<String> parts = new ArrayList<>();
-
-        if (windowSpecification.getExistingWindowName().isPresent()) {
-            parts.add(formatExpression(windowSpecification.getExistingWindowName().get(), indent));
-        }
-        if (!windowSpecification.getPartitionBy().isEmpty()) {
-            parts.add("PARTITION BY " + windowSpecification.getPartitionBy().stream()
-                    .map(e -> formatExpression(e, indent))
-                    .collect(joining(", ")));
-        }
-        if (windowSpecification.getOrderBy().isPresent()) {
-            parts.add(formatOrderBy(windowSpecification.getOrderBy().get(), indent));
-        }
-        if (windowSpecification.getFrame().isPresent()) {
-            parts.add(formatFrame(windowSpecification.getFrame().get(), indent));
-        }
-
-        return '(' + Joiner.on(' ').join(parts) + ')';
-    }
-
-    private static String formatFrame(WindowFrame windowFrame, Integer indent)
     {
         StringBuilder builder = new StringBuilder();
-
-        builder.append(windowFrame.getType().toString())
-                .append(' ');
-
-        if (windowFrame.getEnd().isPresent()) {
-            builder.append("BETWEEN ")
-                    .append(formatFrameBound(windowFrame.getStart(), indent))
-                    .append(" AND ")
-                    .append(formatFrameBound(windowFrame.getEnd().get(), indent));
-        }
-        else {
-            builder.append(formatFrameBound(windowFrame.getStart(), indent));
-        }
-
+        new Formatter(builder).appendWindowSpecification(windowSpecification, indent);
         return builder.toString();
     }
 
-    private static String formatFrameBound(FrameBound frameBound, Integer indent)
-    {
-        switch (frameBound.getType()) {
-            case UNBOUNDED_PRECEDING:
-                return "UNBOUNDED PRECEDING";
-            case PRECEDING:
-                return formatExpression(frameBound.getValue().get(), indent) + " PRECEDING";
-            case CURRENT_ROW:
-                return "CURRENT ROW";
-            case FOLLOWING:
-                return formatExpression(frameBound.getValue().get(), indent) + " FOLLOWING";
-            case UNBOUNDED_FOLLOWING:
-                return "UNBOUNDED FOLLOWING";
-        }
-        throw new IllegalArgumentException("unhandled type: " + frameBound.getType());
-    }
-
     static String formatGroupBy(List<GroupingElement> groupingElements, Integer indent)
     {
-        ImmutableList.Builder<String> resultStrings = ImmutableList.builder();
-
-        for (GroupingElement groupingElement : groupingElements) {
-            String result = "";
-            if (groupingElement instanceof SimpleGroupBy) {
-                List<Expression> columns = groupingElement.getExpressions();
-                if (columns.size() == 1) {
-                    result = formatExpression(getOnlyElement(columns), indent);
-                }
-                else {
-                    result = formatGroupingSet(columns, indent);
-                }
-            }
-            else if (groupingElement instanceof GroupingSets) {
-                result = format("GROUPING SETS (%s)", Joiner.on(", ").join(
-                        ((GroupingSets) groupingElement).getSets().stream()
-                                .map(groupingSet -> formatGroupingSet(groupingSet, indent))
-                                .iterator()));
-            }
-            else if (groupingElement instanceof Cube) {
-                result = format("CUBE %s", formatGroupingSet(groupingElement.getExpressions(), indent));
-            }
-            else if (groupingElement instanceof Rollup) {
-                result = format("ROLLUP %s", formatGroupingSet(groupingElement.getExpressions(), indent));
-            }
-            resultStrings.add(result);
-        }
-        return Joiner.on(", ").join(resultStrings.build());
+        StringBuilder builder = new StringBuilder();
+        new Formatter(builder).appendGroupBy(groupingElements, indent);
+        return builder.toString();
     }
 
     private static boolean isAsciiPrintable(int codePoint)
     {
         return codePoint >= 0x20 && codePoint < 0x7F;
     }
-
-    private static String formatGroupingSet(List<Expression> groupingSet, Integer indent)
-    {
-        return format("(%s)", Joiner.on(", ").join(groupingSet.stream()
-                .map(e -> formatExpression(e, indent))
-                .iterator()));
-    }
-
-    private static Function<SortItem, String> sortItemFormatterFunction(Integer indent)
-    {
-        return input -> {
-            StringBuilder builder = new StringBuilder();
-
-            builder.append(formatExpression(input.getSortKey(), indent));
-
-            switch (input.getOrdering()) {
-                case ASCENDING:
-                    builder.append(" ASC");
-                    break;
-                case DESCENDING:
-                    builder.append(" DESC");
-                    break;
-                default:
-                    throw new UnsupportedOperationException("unknown ordering: " + input.getOrdering());
-            }
-
-            switch (input.getNullOrdering()) {
-                case FIRST:
-                    builder.append(" NULLS FIRST");
-                    break;
-                case LAST:
-                    builder.append(" NULLS LAST");
-                    break;
-                case UNDEFINED:
-                    // no op
-                    break;
-                default:
-                    throw new UnsupportedOperationException("unknown null ordering: " + input.getNullOrdering());
-            }
-
-            return builder.toString();
-        };
-    }
 }
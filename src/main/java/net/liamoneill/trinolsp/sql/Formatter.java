@@ -5,10 +5,42 @@ import io.trino.sql.parser.ParsingException;
 import io.trino.sql.tree.Node;
 import io.trino.sql.tree.Statement;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkState;
 
-public class Formatter {
+public class Formatter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(Formatter.class);
+
+    /**
+     * Whether the formatted SQL is parsed again and compared with the original tree, which roughly doubles the cost of
+     * formatting.
+     */
+    public enum VerificationPolicy
+    {
+        /**
+         * Verify every call, and fail the call if the formatted SQL is not equivalent.
+         */
+        ALWAYS,
+        /**
+         * Verify one in every {@code trinolsp.formatter.verificationSampleRate} calls, and only log mismatches.
+         */
+        SAMPLED,
+        OFF,
+    }
+
+    private static final VerificationPolicy VERIFICATION_POLICY = VerificationPolicy.valueOf(
+            System.getProperty("trinolsp.formatter.verification", VerificationPolicy.ALWAYS.name()).toUpperCase(Locale.ENGLISH));
+    private static final int VERIFICATION_SAMPLE_RATE = Math.max(1, Integer.getInteger("trinolsp.formatter.verificationSampleRate", 100));
+
+    private static final AtomicLong FORMATTED = new AtomicLong();
+    private static final AtomicLong VERIFIED = new AtomicLong();
+    private static final AtomicLong VERIFICATION_FAILURES = new AtomicLong();
 
     private Formatter()
     {
@@ -18,14 +50,95 @@ public class Formatter {
     {
         String formattedSql = SqlFormatter.formatSql(sql);
 
-        // Check that the original & formatted SQL statements are logically equivalent
-        Either<Statement, ParsingException> parseResult = Parser.parse(formattedSql);
-        checkState(parseResult.isLeft(), "Formatted SQL is syntactically invalid");
-        checkState(sql.equals(parseResult.getLeft()), "Formatted SQL is different than original");
+        long count = FORMATTED.incrementAndGet();
+        switch (VERIFICATION_POLICY) {
+            case ALWAYS:
+                verify(sql, formattedSql);
+                break;
+            case SAMPLED:
+                if (count % VERIFICATION_SAMPLE_RATE == 0) {
+                    try {
+                        verify(sql, formattedSql);
+                    }
+                    catch (IllegalStateException e) {
+                        LOGGER.warn("{}:\n{}", e.getMessage(), formattedSql);
+                    }
+                }
+                break;
+            case OFF:
+                break;
+        }
 
         formattedSql = CharMatcher.is('\n').trimTrailingFrom(formattedSql);
         formattedSql = formattedSql + '\n';
 
         return formattedSql;
     }
+
+    private static void verify(Node sql, String formattedSql)
+    {
+        // Check that the original & formatted SQL statements are logically equivalent
+        verify(sql, Parser.parse(formattedSql));
+    }
+
+    /**
+     * Checks the parse of the formatted SQL against the original tree. Returns false without checking if parsing it
+     * again timed out, since that says nothing about whether it is equivalent.
+     */
+    static boolean verify(Node sql, Either<Statement, ParsingException> parseResult)
+    {
+        if (parseResult.isRight() && parseResult.getRight() instanceof ParseTimeoutException) {
+            LOGGER.warn("Skipped verifying formatted SQL: {}", parseResult.getRight().getErrorMessage());
+            return false;
+        }
+
+        VERIFIED.incrementAndGet();
+        if (parseResult.isRight() || !sql.equals(parseResult.getLeft())) {
+            VERIFICATION_FAILURES.incrementAndGet();
+        }
+        checkState(parseResult.isLeft(), "Formatted SQL is syntactically invalid");
+        checkState(sql.equals(parseResult.getLeft()), "Formatted SQL is different than original");
+        return true;
+    }
+
+    public static VerificationStats getVerificationStats()
+    {
+        return new VerificationStats(VERIFICATION_POLICY, FORMATTED.get(), VERIFIED.get(), VERIFICATION_FAILURES.get());
+    }
+
+    public static class VerificationStats
+    {
+        private final VerificationPolicy policy;
+        private final long formatted;
+        private final long verified;
+        private final long failures;
+
+        public VerificationStats(VerificationPolicy policy, long formatted, long verified, long failures)
+        {
+            this.policy = policy;
+            this.formatted = formatted;
+            this.verified = verified;
+            this.failures = failures;
+        }
+
+        public VerificationPolicy getPolicy()
+        {
+            return policy;
+        }
+
+        public long getFormatted()
+        {
+            return formatted;
+        }
+
+        public long getVerified()
+        {
+            return verified;
+        }
+
+        public long getFailures()
+        {
+            return failures;
+        }
+    }
 }
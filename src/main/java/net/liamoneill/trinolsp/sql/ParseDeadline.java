@@ -0,0 +1,35 @@
+package net.liamoneill.trinolsp.sql;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time by which a parse must be done. Checked by the parser before each prediction, which is where ANTLR spends
+ * its time on pathological input.
+ */
+class ParseDeadline {
+    static final ParseDeadline NONE = new ParseDeadline(0, 0);
+
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+
+    private ParseDeadline(long timeoutMillis, long deadlineNanos) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Returns a deadline the given time from now, or {@link #NONE} if the timeout is not positive.
+     */
+    static ParseDeadline after(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return NONE;
+        }
+        return new ParseDeadline(timeoutMillis, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    void check() {
+        if (this != NONE && System.nanoTime() - deadlineNanos > 0) {
+            throw new ParseTimeoutException(timeoutMillis);
+        }
+    }
+}
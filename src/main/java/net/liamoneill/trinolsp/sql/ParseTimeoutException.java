@@ -0,0 +1,21 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.ParsingException;
+
+/**
+ * Thrown from within the parser when a statement takes longer than its deadline to parse. It is a
+ * {@link ParsingException} so that it is returned like any other failed parse, but callers should not treat it as a
+ * syntax error: the statement may well be valid.
+ */
+public class ParseTimeoutException extends ParsingException {
+    private final long timeoutMillis;
+
+    public ParseTimeoutException(long timeoutMillis) {
+        super("Statement took longer than " + timeoutMillis + " ms to parse");
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
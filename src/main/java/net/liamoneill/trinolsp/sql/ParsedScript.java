@@ -0,0 +1,98 @@
+package net.liamoneill.trinolsp.sql;
+
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The statements of a SQL script, each parsed independently.
+ */
+public class ParsedScript {
+    private final LineIndex lineIndex;
+    private final List<ParsedStatement> statements;
+
+    public ParsedScript(LineIndex lineIndex, List<ParsedStatement> statements) {
+        this.lineIndex = lineIndex;
+        this.statements = List.copyOf(statements);
+    }
+
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    public List<ParsedStatement> getStatements() {
+        return statements;
+    }
+
+    public boolean hasErrors() {
+        return statements.stream().anyMatch(statement -> statement.getParseResult().isRight());
+    }
+
+    /**
+     * Returns the statement containing a position, including a position just after its last token.
+     */
+    public Optional<ParsedStatement> statementAt(Position position) {
+        int offset = lineIndex.offsetAt(position);
+        int index = firstEndingAtOrAfter(offset);
+        if (index < statements.size() && statements.get(index).contains(offset)) {
+            return Optional.of(statements.get(index));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the statements overlapping a range, in order. A statement ending where the range starts, or starting
+     * where it ends, overlaps it.
+     */
+    public List<ParsedStatement> statementsIn(Range range) {
+        int startOffset = lineIndex.offsetAt(range.getStart());
+        int endOffset = lineIndex.offsetAt(range.getEnd());
+        List<ParsedStatement> result = new ArrayList<>();
+        for (int i = firstEndingAtOrAfter(startOffset); i < statements.size(); i++) {
+            ParsedStatement statement = statements.get(i);
+            if (statement.getStartOffset() > endOffset) {
+                break;
+            }
+            result.add(statement);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the statement containing an offset, or else the last statement before it.
+     */
+    public Optional<ParsedStatement> statementAtOrBefore(int offset) {
+        int index = firstEndingAtOrAfter(offset);
+        if (index < statements.size() && statements.get(index).getStartOffset() <= offset) {
+            return Optional.of(statements.get(index));
+        }
+        return index > 0 ? Optional.of(statements.get(index - 1)) : Optional.empty();
+    }
+
+    /**
+     * Returns the last statement ending at or before an offset.
+     */
+    public Optional<ParsedStatement> statementBefore(int offset) {
+        int index = firstEndingAtOrAfter(offset + 1) - 1;
+        return index >= 0 ? Optional.of(statements.get(index)) : Optional.empty();
+    }
+
+    // Statements are in order and do not overlap, so their end offsets are sorted
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = statements.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (statements.get(middle).getEndOffset() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,95 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.NodeLocation;
+import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+import java.util.function.Supplier;
+
+/**
+ * A single statement of a script together with its parse result.
+ *
+ * The statement is parsed on its own, so the locations in its AST and parsing errors are relative to the statement
+ * text. Use {@link #toDocumentPosition(int, int)} to map them back into the script.
+ *
+ * The statement is parsed on first use, so work which stops part way through a script (e.g. diagnostics for a version
+ * which has since been superseded) does not parse the statements after it.
+ */
+public class ParsedStatement {
+    private final StatementSplitter.StatementRange range;
+    private final Position start;
+    private final Position end;
+    private final String sql;
+    private final Supplier<Either<Statement, ParsingException>> parseResult;
+    private final Supplier<RecoveredStatement> recoveredStatement;
+
+    public ParsedStatement(StatementSplitter.StatementRange range, LineIndex lineIndex, String sql, Supplier<Either<Statement, ParsingException>> parseResult,
+            Supplier<RecoveredStatement> recoveredStatement) {
+        this.range = range;
+        this.start = lineIndex.positionAt(range.getStart());
+        this.end = lineIndex.positionAt(range.getEnd());
+        this.sql = sql;
+        this.parseResult = parseResult;
+        this.recoveredStatement = recoveredStatement;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public Either<Statement, ParsingException> getParseResult() {
+        return parseResult.get();
+    }
+
+    /**
+     * Returns all syntax errors of the statement and its (possibly partial) AST, which is only computed on first use.
+     */
+    public RecoveredStatement getRecoveredStatement() {
+        return recoveredStatement.get();
+    }
+
+    public int getStartOffset() {
+        return range.getStart();
+    }
+
+    public int getEndOffset() {
+        return range.getEnd();
+    }
+
+    public Position getStart() {
+        return start;
+    }
+
+    public Position getEnd() {
+        return end;
+    }
+
+    public Range getRange() {
+        return new Range(getStart(), getEnd());
+    }
+
+    /**
+     * Returns whether an offset is within the statement, including the offset just after its last token.
+     */
+    public boolean contains(int offset) {
+        return range.getStart() <= offset && offset <= range.getEnd();
+    }
+
+    /**
+     * Maps a 1-based line and column within the statement, as used by Trino for node locations and parsing errors,
+     * to a 0-based position in the script.
+     */
+    public Position toDocumentPosition(int line, int column) {
+        int documentLine = start.getLine() + line - 1;
+        int documentColumn = (line == 1 ? start.getCharacter() : 0) + column - 1;
+        return new Position(documentLine, Math.max(documentColumn, 0));
+    }
+
+    public Position toDocumentPosition(NodeLocation location) {
+        return toDocumentPosition(location.getLineNumber(), location.getColumnNumber());
+    }
+}
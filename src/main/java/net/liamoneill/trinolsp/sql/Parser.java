@@ -1,25 +1,510 @@
 package net.liamoneill.trinolsp.sql;
 
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.trino.sql.parser.CaseInsensitiveStream;
 import io.trino.sql.parser.ParsingException;
 import io.trino.sql.parser.ParsingOptions;
+import io.trino.sql.parser.SqlBaseLexer;
+import io.trino.sql.parser.SqlBaseParser;
 import io.trino.sql.parser.SqlParser;
+import io.trino.sql.parser.SqlParserOptions;
 import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Supplier;
 
 public class Parser {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Parser.class);
+
+    // When the parser's DFA cache grows past this many states it is replaced by an empty one, 0 never replaces it
+    private static final int MAX_DFA_STATES = Integer.getInteger("trinolsp.parser.maxDfaStates", 0);
+    private static final int DFA_CHECK_INTERVAL = 256;
+
+    private static volatile DfaCache dfaCache = new DfaCache();
+
+    /**
+     * How the parser predicts which alternative of the grammar to take. SLL prediction is much faster than full LL
+     * prediction but can fail on a few valid statements, TWO_STAGE parses with SLL and only uses LL to check errors.
+     */
+    public enum PredictionStrategy {
+        TWO_STAGE,
+        SLL,
+        LL,
+    }
+
+    private static final PredictionStrategy PREDICTION_STRATEGY = PredictionStrategy.valueOf(
+            System.getProperty("trinolsp.parser.predictionStrategy", PredictionStrategy.TWO_STAGE.name()).toUpperCase(Locale.ENGLISH));
+
+    private static final long PARSE_TIMEOUT_MILLIS = Long.getLong("trinolsp.parser.timeoutMillis", 2_000);
+    // Set around each parse, for the parser initializer to pick up
+    private static final ThreadLocal<ParseDeadline> CURRENT_DEADLINE = ThreadLocal.withInitial(() -> ParseDeadline.NONE);
+
     private static final ParsingOptions PARSING_OPTIONS = new ParsingOptions();
-    private static final SqlParser SQL_PARSER = new SqlParser();
+    private static final Stage SLL_STAGE = new Stage(PredictionMode.SLL);
+    private static final Stage LL_STAGE = new Stage(PredictionMode.LL);
+
+    private static final AtomicLong PARSES = new AtomicLong();
+    private static final AtomicLong PARSE_NANOS = new AtomicLong();
+    private static final LongAccumulator MAX_PARSE_NANOS = new LongAccumulator(Math::max, 0);
+    private static final AtomicLong DFA_CLEARS = new AtomicLong();
+    private static volatile long warmUpMillis = -1;
+
+    // Statements are cached by their text: after an edit only the statements whose text changed are parsed again.
+    // Timeouts are not cached, as they depend on the load and on how warm the DFA cache was at the time.
+    private static final long STATEMENT_CACHE_MAX_CHARACTERS = 1 << 20;
+    private static final Cache<String, Either<Statement, ParsingException>> STATEMENT_CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(STATEMENT_CACHE_MAX_CHARACTERS)
+            .weigher((String sql, Either<Statement, ParsingException> result) -> sql.length())
+            .build();
+    private static final Cache<String, RecoveredStatement> RECOVERY_CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(STATEMENT_CACHE_MAX_CHARACTERS)
+            .weigher((String sql, RecoveredStatement result) -> sql.length())
+            .build();
+
+    // Bounds the work spent on a statement with many errors
+    private static final int MAX_RECOVERY_ATTEMPTS = 8;
+    private static final int MAX_SYNTAX_ERRORS = 20;
 
     private Parser() {
     }
 
+    /**
+     * Parses a statement within {@code trinolsp.parser.timeoutMillis}. A parse which takes longer fails with a
+     * {@link ParseTimeoutException}.
+     */
     public static Either<Statement, ParsingException> parse(String sql) {
+        return parse(sql, PARSE_TIMEOUT_MILLIS);
+    }
+
+    public static Either<Statement, ParsingException> parse(String sql, long timeoutMillis) {
+        return parse(sql, PREDICTION_STRATEGY, timeoutMillis);
+    }
+
+    /**
+     * Parses a statement with the given prediction strategy rather than {@code trinolsp.parser.predictionStrategy}.
+     */
+    public static Either<Statement, ParsingException> parse(String sql, PredictionStrategy strategy, long timeoutMillis) {
+        long start = System.nanoTime();
+        ParseDeadline deadline = ParseDeadline.after(timeoutMillis);
         try {
-            Statement statement = SQL_PARSER.createStatement(sql, PARSING_OPTIONS);
-            return Either.forLeft(statement);
+            return switch (strategy) {
+                case SLL -> SLL_STAGE.parse(sql, deadline);
+                case LL -> LL_STAGE.parse(sql, deadline);
+                case TWO_STAGE -> parseTwoStage(() -> SLL_STAGE.parse(sql, deadline), () -> LL_STAGE.parse(sql, deadline));
+            };
+        }
+        finally {
+            recordParse(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the SLL result unless it is an error, in which case the statement is parsed again with LL: SLL can
+     * reject some valid statements, only full LL prediction can tell whether an error is real, and where it is.
+     */
+    static Either<Statement, ParsingException> parseTwoStage(Supplier<Either<Statement, ParsingException>> sll,
+            Supplier<Either<Statement, ParsingException>> ll) {
+        Either<Statement, ParsingException> result = sll.get();
+        return result.isLeft() || result.getRight() instanceof ParseTimeoutException ? result : ll.get();
+    }
+
+    private static void recordParse(long nanos) {
+        long parses = PARSES.incrementAndGet();
+        PARSE_NANOS.addAndGet(nanos);
+        MAX_PARSE_NANOS.accumulate(nanos);
+
+        if (MAX_DFA_STATES > 0 && parses % DFA_CHECK_INTERVAL == 0) {
+            clearDfaCacheIfLarger(MAX_DFA_STATES);
+        }
+    }
+
+    /**
+     * Replaces the DFA cache by an empty one if it has more than the given number of states, returning whether it
+     * did.
+     */
+    static boolean clearDfaCacheIfLarger(int maxStates) {
+        DfaCache current = dfaCache;
+        if (current.getStateCount() <= maxStates) {
+            return false;
+        }
+        dfaCache = new DfaCache();
+        DFA_CLEARS.incrementAndGet();
+        LOGGER.info("Cleared the parser DFA cache after it grew past {} states", maxStates);
+        return true;
+    }
+
+    /**
+     * Parses a corpus of representative statements, so that ANTLR builds most of the DFA cache the first requests
+     * would otherwise have to wait for. Returns the number of statements which failed to parse, which should be none.
+     */
+    public static int warmUp() {
+        long start = System.nanoTime();
+        String corpus = loadWarmUpCorpus();
+        int statements = 0;
+        int failures = 0;
+        for (StatementSplitter.StatementRange range : StatementSplitter.split(corpus)) {
+            Either<Statement, ParsingException> result = parse(corpus.substring(range.getStart(), range.getEnd()));
+            if (result.isRight()) {
+                LOGGER.warn("Warm-up statement failed to parse: {}", result.getRight().getMessage());
+                failures++;
+            }
+            statements++;
+        }
+        warmUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info("Warmed up the parser with {} statements in {} ms", statements, warmUpMillis);
+        return failures;
+    }
+
+    static String loadWarmUpCorpus() {
+        try (InputStream inputStream = Parser.class.getResourceAsStream("/warmup/queries.sql")) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing warm-up queries resource");
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ParserStats getStats() {
+        return new ParserStats(PREDICTION_STRATEGY, PARSES.get(), PARSE_NANOS.get(), MAX_PARSE_NANOS.get(),
+                SLL_STAGE.getStats(), LL_STAGE.getStats(), dfaCache.getStateCount(), DFA_CLEARS.get(), warmUpMillis);
+    }
+
+    /**
+     * Parses with one prediction mode, counting its parses, failures and time.
+     */
+    private static class Stage {
+        private final SqlParser sqlParser;
+        private final AtomicLong parses = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        Stage(PredictionMode mode) {
+            this.sqlParser = new SqlParser(new SqlParserOptions(), (lexer, parser) -> dfaCache.install(lexer, parser, mode, CURRENT_DEADLINE.get()));
+        }
+
+        Either<Statement, ParsingException> parse(String sql, ParseDeadline deadline) {
+            long start = System.nanoTime();
+            CURRENT_DEADLINE.set(deadline);
+            try {
+                return Either.forLeft(sqlParser.createStatement(sql, PARSING_OPTIONS));
+            }
+            catch (ParsingException e) {
+                failures.incrementAndGet();
+                return Either.forRight(e);
+            }
+            finally {
+                CURRENT_DEADLINE.remove();
+                parses.incrementAndGet();
+                nanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        ParserStats.StageStats getStats() {
+            return new ParserStats.StageStats(parses.get(), failures.get(), nanos.get());
+        }
+    }
+
+    /**
+     * Parses each `;` separated statement of a script independently. Statements are only split here, each one is
+     * parsed on first use of its parse result.
+     */
+    public static ParsedScript parseScript(String sql) {
+        return parseScript(sql, LineIndex.of(sql));
+    }
+
+    /**
+     * Parses a script whose line index has already been computed.
+     */
+    public static ParsedScript parseScript(String sql, LineIndex lineIndex) {
+        List<ParsedStatement> statements = new ArrayList<>();
+        for (StatementSplitter.StatementRange range : StatementSplitter.split(sql)) {
+            String statementSql = sql.substring(range.getStart(), range.getEnd());
+            statements.add(new ParsedStatement(range, lineIndex, statementSql, Suppliers.memoize(() -> parseCached(statementSql)),
+                    Suppliers.memoize(() -> parseRecovering(statementSql))));
+        }
+        return new ParsedScript(lineIndex, statements);
+    }
+
+    private static Either<Statement, ParsingException> parseCached(String sql) {
+        Either<Statement, ParsingException> result = STATEMENT_CACHE.getIfPresent(sql);
+        if (result == null) {
+            result = parse(sql);
+            if (!(result.isRight() && result.getRight() instanceof ParseTimeoutException)) {
+                STATEMENT_CACHE.put(sql, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses a statement which may have syntax errors, finding all of them rather than only the first one, and an
+     * AST for the rest of the statement.
+     *
+     * The errors after the first one come from a parse using ANTLR's error recovery, which resynchronizes after each
+     * error and does not report the errors that directly follow from an earlier one. The Trino AST can only be built
+     * from a statement without errors, so the AST is recovered on the text instead, the same way ANTLR's single
+     * token deletion works: the token at which parsing failed is blanked out (keeping the locations of the others)
+     * and the statement parsed again, until it parses.
+     */
+    public static RecoveredStatement parseRecovering(String sql) {
+        Either<Statement, ParsingException> result = parseCached(sql);
+        if (result.isLeft()) {
+            return new RecoveredStatement(Optional.of(result.getLeft()), List.of());
         }
-        catch (ParsingException e) {
-            return Either.forRight(e);
+
+        if (result.getRight() instanceof ParseTimeoutException) {
+            // Recovering would take even longer
+            return new RecoveredStatement(Optional.empty(), List.of(result.getRight()));
+        }
+
+        RecoveredStatement recovered = RECOVERY_CACHE.getIfPresent(sql);
+        if (recovered == null) {
+            Bounded<Optional<Statement>> statement = recoverStatement(sql, result.getRight());
+            Bounded<List<ParsingException>> errors = syntaxErrors(sql, result.getRight());
+            recovered = new RecoveredStatement(statement.result(), errors.result());
+            // What was found before a deadline is still returned, but the next request tries again
+            if (!statement.timedOut() && !errors.timedOut()) {
+                RECOVERY_CACHE.put(sql, recovered);
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * The result of work bounded by a deadline, which is partial if the deadline passed.
+     */
+    private record Bounded<T>(T result, boolean timedOut) {
+    }
+
+    private static Bounded<List<ParsingException>> syntaxErrors(String sql, ParsingException firstError) {
+        List<ParsingException> errors = new ArrayList<>();
+        // Trino's message for the first error is more helpful than ANTLR's list of every expected token
+        errors.add(firstError);
+
+        SqlBaseLexer lexer = new SqlBaseLexer(new CaseInsensitiveStream(CharStreams.fromString(sql)));
+        SqlBaseParser parser = new SqlBaseParser(new CommonTokenStream(lexer));
+        dfaCache.install(lexer, parser, PredictionMode.LL, ParseDeadline.after(PARSE_TIMEOUT_MILLIS));
+        lexer.removeErrorListeners();
+        parser.removeErrorListeners();
+        parser.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String message, RecognitionException e) {
+                boolean afterFirstError = line > firstError.getLineNumber()
+                        || (line == firstError.getLineNumber() && charPositionInLine + 1 > firstError.getColumnNumber());
+                if (afterFirstError && errors.size() < MAX_SYNTAX_ERRORS) {
+                    errors.add(new ParsingException(message, e, line, charPositionInLine));
+                }
+            }
+        });
+        try {
+            parser.singleStatement();
+        }
+        catch (ParseTimeoutException e) {
+            // Keep the errors found so far
+            return new Bounded<>(errors, true);
+        }
+
+        return new Bounded<>(errors, false);
+    }
+
+    private static Bounded<Optional<Statement>> recoverStatement(String sql, ParsingException error) {
+        LineIndex lineIndex = LineIndex.of(sql);
+        char[] text = sql.toCharArray();
+        for (int attempt = 0; attempt < MAX_RECOVERY_ATTEMPTS; attempt++) {
+            // ANTLR columns and token indices count code points, the text is indexed by UTF-16 chars. Blanking keeps
+            // the length in chars, so the line starts do not move, but it can change the number of code points.
+            String current = new String(text);
+            int lineStart = lineIndex.offsetAt(new Position(error.getLineNumber() - 1, 0));
+            int errorCodePoint = current.codePointCount(0, lineStart) + error.getColumnNumber() - 1;
+            Token token = tokenToDelete(current, errorCodePoint);
+            if (token == null) {
+                return new Bounded<>(Optional.empty(), false);
+            }
+            int start = current.offsetByCodePoints(0, token.getStartIndex());
+            int end = current.offsetByCodePoints(start, token.getStopIndex() + 1 - token.getStartIndex());
+            for (int i = start; i < end; i++) {
+                if (text[i] != '\n' && text[i] != '\r') {
+                    text[i] = ' ';
+                }
+            }
+
+            // Most attempts fail, and a rare false SLL failure only costs one more deleted token
+            Either<Statement, ParsingException> result = SLL_STAGE.parse(new String(text), ParseDeadline.after(PARSE_TIMEOUT_MILLIS));
+            if (result.isLeft()) {
+                return new Bounded<>(Optional.of(result.getLeft()), false);
+            }
+            error = result.getRight();
+            if (error instanceof ParseTimeoutException) {
+                return new Bounded<>(Optional.empty(), true);
+            }
+        }
+        return new Bounded<>(Optional.empty(), false);
+    }
+
+    /**
+     * Returns the errors found by lexing a statement, e.g. unterminated literals and unexpected characters. Lexing
+     * takes linear time, so this is what is left to check in a statement which could not be parsed in time.
+     */
+    public static List<ParsingException> lexicalErrors(String sql) {
+        List<ParsingException> errors = new ArrayList<>();
+        SqlBaseLexer lexer = new SqlBaseLexer(new CaseInsensitiveStream(CharStreams.fromString(sql)));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String message, RecognitionException e) {
+                if (errors.size() < MAX_SYNTAX_ERRORS) {
+                    errors.add(new ParsingException(message, e, line, charPositionInLine));
+                }
+            }
+        });
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            if (token.getType() == SqlBaseLexer.UNRECOGNIZED && errors.size() < MAX_SYNTAX_ERRORS) {
+                errors.add(new ParsingException("Unexpected character: '" + token.getText() + "'", null, token.getLine(), token.getCharPositionInLine()));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the token at which parsing failed, or the last token if it failed at the end of the statement. The error
+     * position is a code point index, like the token indices.
+     */
+    private static Token tokenToDelete(String sql, int errorCodePoint) {
+        SqlBaseLexer lexer = new SqlBaseLexer(new CaseInsensitiveStream(CharStreams.fromString(sql)));
+        lexer.removeErrorListeners();
+
+        Token last = null;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            if (token.getChannel() != Token.DEFAULT_CHANNEL) {
+                continue;
+            }
+            if (token.getStopIndex() >= errorCodePoint) {
+                return token;
+            }
+            last = token;
+        }
+        return last;
+    }
+
+    public static class ParserStats {
+        private final PredictionStrategy predictionStrategy;
+        private final long parses;
+        private final double averageParseMillis;
+        private final double maxParseMillis;
+        private final StageStats sll;
+        private final StageStats ll;
+        private final int dfaStates;
+        private final long dfaClears;
+        private final long warmUpMillis;
+
+        public ParserStats(PredictionStrategy predictionStrategy, long parses, long parseNanos, long maxParseNanos, StageStats sll, StageStats ll,
+                int dfaStates, long dfaClears, long warmUpMillis) {
+            this.predictionStrategy = predictionStrategy;
+            this.parses = parses;
+            this.averageParseMillis = parses == 0 ? 0 : parseNanos / 1e6 / parses;
+            this.maxParseMillis = maxParseNanos / 1e6;
+            this.sll = sll;
+            this.ll = ll;
+            this.dfaStates = dfaStates;
+            this.dfaClears = dfaClears;
+            this.warmUpMillis = warmUpMillis;
+        }
+
+        public PredictionStrategy getPredictionStrategy() {
+            return predictionStrategy;
+        }
+
+        public long getParses() {
+            return parses;
+        }
+
+        public double getAverageParseMillis() {
+            return averageParseMillis;
+        }
+
+        public double getMaxParseMillis() {
+            return maxParseMillis;
+        }
+
+        public StageStats getSll() {
+            return sll;
+        }
+
+        public StageStats getLl() {
+            return ll;
+        }
+
+        public int getDfaStates() {
+            return dfaStates;
+        }
+
+        public long getDfaClears() {
+            return dfaClears;
+        }
+
+        /**
+         * How long the warm-up at startup took, or -1 if the parser was not warmed up.
+         */
+        public long getWarmUpMillis() {
+            return warmUpMillis;
+        }
+
+        public static class StageStats {
+            private final long parses;
+            private final long failures;
+            private final double averageParseMillis;
+
+            public StageStats(long parses, long failures, long nanos) {
+                this.parses = parses;
+                this.failures = failures;
+                this.averageParseMillis = parses == 0 ? 0 : nanos / 1e6 / parses;
+            }
+
+            public long getParses() {
+                return parses;
+            }
+
+            public long getFailures() {
+                return failures;
+            }
+
+            /**
+             * The share of parses which succeeded. For the SLL stage of TWO_STAGE this is how often LL was not needed.
+             */
+            public double getHitRate() {
+                return parses == 0 ? 0 : (double) (parses - failures) / parses;
+            }
+
+            public double getAverageParseMillis() {
+                return averageParseMillis;
+            }
         }
     }
 }
@@ -0,0 +1,36 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.Statement;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The result of parsing a statement which may have syntax errors: all of its syntax errors, and an AST of as much of
+ * the statement as could be recovered.
+ *
+ * The AST of a statement with errors is partial, it must not be used where its text matters (e.g. formatting). Its
+ * node locations are those of the original statement text.
+ */
+public class RecoveredStatement {
+    private final Optional<Statement> statement;
+    private final List<ParsingException> errors;
+
+    public RecoveredStatement(Optional<Statement> statement, List<ParsingException> errors) {
+        this.statement = statement;
+        this.errors = List.copyOf(errors);
+    }
+
+    public Optional<Statement> getStatement() {
+        return statement;
+    }
+
+    public List<ParsingException> getErrors() {
+        return errors;
+    }
+
+    public boolean isPartial() {
+        return !errors.isEmpty();
+    }
+}
@@ -0,0 +1,161 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.CaseInsensitiveStream;
+import io.trino.sql.parser.SqlBaseLexer;
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.Vocabulary;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies the tokens of a script for syntax highlighting, using only the Trino lexer.
+ *
+ * The result is in the LSP semantic tokens encoding: five integers per token (line delta, start character delta,
+ * length, token type, modifiers), positions relative to the previous token. Tokens spanning several lines (comments,
+ * strings) are split into one token per line, as clients are not required to support multi-line tokens.
+ */
+public class SemanticTokenizer {
+
+    /**
+     * The token types, in the order of the legend advertised to clients.
+     */
+    public static final List<String> TOKEN_TYPES = List.of("keyword", "string", "number", "comment", "operator", "variable", "function");
+
+    private static final int NONE = -1;
+    private static final int KEYWORD = 0;
+    private static final int STRING = 1;
+    private static final int NUMBER = 2;
+    private static final int COMMENT = 3;
+    private static final int OPERATOR = 4;
+    private static final int VARIABLE = 5;
+    private static final int FUNCTION = 6;
+
+    private static final Map<String, Integer> SYMBOLIC_TYPES = Map.ofEntries(
+            Map.entry("STRING", STRING),
+            Map.entry("UNICODE_STRING", STRING),
+            Map.entry("BINARY_LITERAL", STRING),
+            Map.entry("INTEGER_VALUE", NUMBER),
+            Map.entry("DECIMAL_VALUE", NUMBER),
+            Map.entry("DOUBLE_VALUE", NUMBER),
+            Map.entry("IDENTIFIER", VARIABLE),
+            Map.entry("DIGIT_IDENTIFIER", VARIABLE),
+            Map.entry("QUOTED_IDENTIFIER", VARIABLE),
+            Map.entry("BACKQUOTED_IDENTIFIER", VARIABLE),
+            Map.entry("SIMPLE_COMMENT", COMMENT),
+            Map.entry("BRACKETED_COMMENT", COMMENT));
+
+    // The semantic token type of each lexer token type
+    private static final int[] TYPES;
+
+    static {
+        Vocabulary vocabulary = SqlBaseLexer.VOCABULARY;
+        TYPES = new int[vocabulary.getMaxTokenType() + 1];
+        Arrays.fill(TYPES, NONE);
+        for (int tokenType = 0; tokenType < TYPES.length; tokenType++) {
+            String literal = vocabulary.getLiteralName(tokenType);
+            String symbolic = vocabulary.getSymbolicName(tokenType);
+            if (literal != null && literal.matches("'[A-Z][A-Z_ ]*'")) {
+                TYPES[tokenType] = KEYWORD;
+            } else if (literal != null && !literal.matches("'[(),.\\[\\]?:]'")) {
+                TYPES[tokenType] = OPERATOR;
+            } else if (symbolic != null) {
+                TYPES[tokenType] = SYMBOLIC_TYPES.getOrDefault(symbolic, NONE);
+            }
+        }
+    }
+
+    private SemanticTokenizer() {
+    }
+
+    public static int[] tokenize(String text, LineIndex lineIndex) {
+        Encoder encoder = new Encoder(lineIndex);
+        SqlBaseLexer lexer = new SqlBaseLexer(new CaseInsensitiveStream(CharStreams.fromString(text)));
+        lexer.removeErrorListeners();
+
+        // ANTLR indexes code points, LSP positions count UTF-16 characters
+        boolean surrogates = text.length() != text.codePointCount(0, text.length());
+        int codePoint = 0;
+        int offset = 0;
+
+        // An identifier is only known to be a function name once the next token turns out to be '('
+        int pendingStart = -1;
+        int pendingEnd = -1;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            int start = token.getStartIndex();
+            int end = token.getStopIndex() + 1;
+            if (surrogates) {
+                offset = text.offsetByCodePoints(offset, start - codePoint);
+                int endOffset = text.offsetByCodePoints(offset, end - start);
+                codePoint = start;
+                start = offset;
+                end = endOffset;
+            }
+
+            int type = token.getType() < TYPES.length ? TYPES[token.getType()] : NONE;
+            boolean visible = token.getChannel() == Token.DEFAULT_CHANNEL;
+            if (pendingStart >= 0 && (visible || type != NONE)) {
+                encoder.add(pendingStart, pendingEnd, visible && "(".equals(token.getText()) ? FUNCTION : VARIABLE);
+                pendingStart = -1;
+            }
+            if (type == VARIABLE) {
+                pendingStart = start;
+                pendingEnd = end;
+            } else if (type != NONE) {
+                encoder.add(start, end, type);
+            }
+        }
+        if (pendingStart >= 0) {
+            encoder.add(pendingStart, pendingEnd, VARIABLE);
+        }
+        return encoder.toArray();
+    }
+
+    private static class Encoder {
+        private final LineIndex lineIndex;
+        private int[] data = new int[1024];
+        private int size;
+        private int previousLine;
+        private int previousCharacter;
+
+        Encoder(LineIndex lineIndex) {
+            this.lineIndex = lineIndex;
+        }
+
+        void add(int start, int end, int type) {
+            int line = lineIndex.lineAt(start);
+            int segmentStart = start;
+            while (segmentStart < end) {
+                int lineEnd = Math.min(end, lineIndex.lineEndOffset(line));
+                if (lineEnd > segmentStart) {
+                    addSegment(line, segmentStart - lineIndex.lineStartOffset(line), lineEnd - segmentStart, type);
+                }
+                line++;
+                if (line >= lineIndex.getLineCount()) {
+                    break;
+                }
+                segmentStart = lineIndex.lineStartOffset(line);
+            }
+        }
+
+        private void addSegment(int line, int character, int length, int type) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = line - previousLine;
+            data[size++] = line == previousLine ? character - previousCharacter : character;
+            data[size++] = length;
+            data[size++] = type;
+            data[size++] = 0;
+            previousLine = line;
+            previousCharacter = character;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
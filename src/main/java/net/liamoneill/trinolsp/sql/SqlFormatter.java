@@ -26,10 +26,15 @@ final class SqlFormatter
     public static String formatSql(Node root)
     {
         StringBuilder builder = new StringBuilder();
-        new Formatter(builder).process(root, 0);
+        formatSql(root, builder);
         return builder.toString();
     }
 
+    static void formatSql(Node root, StringBuilder builder)
+    {
+        new Formatter(builder).process(root, 0);
+    }
+
     static String formatName(QualifiedName name)
     {
         return name.getOriginalParts().stream()
@@ -57,7 +62,7 @@ final class SqlFormatter
         protected Void visitExpression(Expression node, Integer indent)
         {
             checkArgument(indent == 0, "visitExpression should only be called at root");
-            builder.append(formatExpression(node, indent));
+            formatExpression(node, indent, builder);
             return null;
         }
 
@@ -188,8 +193,9 @@ final class SqlFormatter
 
             if (node.getWhere().isPresent()) {
                 append(indent, "WHERE\n");
-                append(indent + 1, formatExpression(node.getWhere().get(), indent + 1))
-                        .append('\n');
+                builder.append(indentString(indent + 1));
+                formatExpression(node.getWhere().get(), indent + 1, builder);
+                builder.append('\n');
             }
 
             if (node.getGroupBy().isPresent()) {
@@ -197,8 +203,9 @@ final class SqlFormatter
             }
 
             if (node.getHaving().isPresent()) {
-                append(indent, "HAVING " + formatExpression(node.getHaving().get(), indent))
-                        .append('\n');
+                append(indent, "HAVING ");
+                formatExpression(node.getHaving().get(), indent, builder);
+                builder.append('\n');
             }
 
             if (!node.getWindows().isEmpty()) {
@@ -242,17 +249,18 @@ final class SqlFormatter
         @Override
         protected Void visitOrderBy(OrderBy node, Integer indent)
         {
-            append(indent, formatOrderBy(node, indent))
-                    .append('\n');
+            builder.append(indentString(indent));
+            formatOrderBy(node, indent, builder);
+            builder.append('\n');
             return null;
         }
 
         @Override
         protected Void visitOffset(Offset node, Integer indent)
         {
-            append(indent, "OFFSET ")
-                    .append(formatExpression(node.getRowCount(), indent))
-                    .append(" ROWS\n");
+            append(indent, "OFFSET ");
+            formatExpression(node.getRowCount(), indent, builder);
+            builder.append(" ROWS\n");
             return null;
         }
 
@@ -268,9 +276,9 @@ final class SqlFormatter
         @Override
         protected Void visitLimit(Limit node, Integer indent)
         {
-            append(indent, "LIMIT ")
-                    .append(formatExpression(node.getRowCount(), indent))
-                    .append('\n');
+            append(indent, "LIMIT ");
+            formatExpression(node.getRowCount(), indent, builder);
+            builder.append('\n');
             return null;
         }
 
@@ -306,10 +314,10 @@ final class SqlFormatter
         @Override
         protected Void visitSingleColumn(SingleColumn node, Integer indent)
         {
-            builder.append(formatExpression(node.getExpression(), indent));
+            formatExpression(node.getExpression(), indent, builder);
             if (node.getAlias().isPresent()) {
-                builder.append(' ')
-                        .append(formatExpression(node.getAlias().get(), indent));
+                builder.append(' ');
+                formatExpression(node.getAlias().get(), indent, builder);
             }
 
             return null;
@@ -375,8 +383,8 @@ final class SqlFormatter
                 }
                 else if (criteria instanceof JoinOn) {
                     JoinOn on = (JoinOn) criteria;
-                    builder.append(" ON ")
-                            .append(formatExpression(on.getExpression(), indent));
+                    builder.append(" ON ");
+                    formatExpression(on.getExpression(), indent, builder);
                 }
                 else if (!(criteria instanceof NaturalJoin)) {
                     throw new UnsupportedOperationException("unknown join criteria: " + criteria);
@@ -439,7 +447,7 @@ final class SqlFormatter
                         .append(indentString(indent))
                         .append(first ? "  " : ", ");
 
-                builder.append(formatExpression(row, indent));
+                formatExpression(row, indent, builder);
                 first = false;
             }
             builder.append('\n');
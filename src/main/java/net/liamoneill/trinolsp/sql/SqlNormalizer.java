@@ -0,0 +1,55 @@
+package net.liamoneill.trinolsp.sql;
+
+/**
+ * Normalizes the layout of a SQL string without parsing it, so that texts which differ only in whitespace and
+ * comments map to the same string.
+ *
+ * Comments are dropped and each run of whitespace and comments outside quotes becomes a single space. String
+ * literals and quoted identifiers are kept verbatim, and the case of the text is not changed.
+ */
+public class SqlNormalizer {
+
+    private SqlNormalizer() {
+    }
+
+    public static String normalize(String sql) {
+        StringBuilder builder = new StringBuilder(sql.length());
+        boolean pendingSpace = false;
+
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+
+            int tokenEnd;
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int newline = sql.indexOf('\n', i);
+                i = newline < 0 ? length : newline;
+                pendingSpace = true;
+                continue;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int close = sql.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 2;
+                pendingSpace = true;
+                continue;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                pendingSpace = true;
+                continue;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                tokenEnd = StatementSplitter.quotedEnd(sql, i, c);
+            } else {
+                tokenEnd = i + 1;
+            }
+
+            if (pendingSpace && builder.length() > 0) {
+                builder.append(' ');
+            }
+            pendingSpace = false;
+            builder.append(sql, i, tokenEnd);
+            i = tokenEnd;
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package net.liamoneill.trinolsp.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a SQL script into its `;` separated statements without parsing it.
+ *
+ * Semicolons inside string literals, quoted identifiers and comments do not end a statement. Each returned range
+ * starts at the first token of the statement and ends after its last token, so comments and blank lines between
+ * statements are not part of any statement. Segments without any tokens (e.g. only comments) are skipped.
+ */
+public class StatementSplitter {
+
+    private StatementSplitter() {
+    }
+
+    public static List<StatementRange> split(String sql) {
+        List<StatementRange> statements = new ArrayList<>();
+
+        int start = -1;
+        int end = -1;
+
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+
+            if (c == ';') {
+                if (start >= 0) {
+                    statements.add(new StatementRange(start, end));
+                    start = -1;
+                }
+                i++;
+                continue;
+            }
+
+            int tokenEnd;
+            boolean trivia = false;
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int newline = sql.indexOf('\n', i);
+                tokenEnd = newline < 0 ? length : newline;
+                trivia = true;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int close = sql.indexOf("*/", i + 2);
+                tokenEnd = close < 0 ? length : close + 2;
+                trivia = true;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                tokenEnd = quotedEnd(sql, i, c);
+            } else if (Character.isWhitespace(c)) {
+                tokenEnd = i + 1;
+                trivia = true;
+            } else {
+                tokenEnd = i + 1;
+            }
+
+            if (!trivia) {
+                if (start < 0) {
+                    start = i;
+                }
+                end = tokenEnd;
+            }
+            i = tokenEnd;
+        }
+
+        if (start >= 0) {
+            statements.add(new StatementRange(start, end));
+        }
+
+        return statements;
+    }
+
+    static int quotedEnd(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                // A doubled quote is an escaped quote, not the end of the literal.
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return sql.length();
+    }
+
+    /**
+     * The [start, end) character offsets of a statement within a script.
+     */
+    public static class StatementRange {
+        private final int start;
+        private final int end;
+
+        public StatementRange(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+}
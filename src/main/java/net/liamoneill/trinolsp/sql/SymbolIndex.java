@@ -0,0 +1,197 @@
+package net.liamoneill.trinolsp.sql;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.trino.sql.tree.*;
+import org.eclipse.lsp4j.DocumentSymbol;
+import org.eclipse.lsp4j.FoldingRange;
+import org.eclipse.lsp4j.FoldingRangeKind;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolKind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The symbols of a script, for the outline: one per statement, with the names it defines (CTEs and relation aliases)
+ * as its children. Also the folding ranges of the statements spanning several lines.
+ *
+ * Statements with syntax errors are indexed using their recovered AST, so the outline does not change while one of
+ * them is being edited. The symbols of each statement are cached by its text, relative to the statement, so after an
+ * edit only the statements which changed are walked again; the others are only moved to their new position.
+ */
+public class SymbolIndex {
+    private static final int MAX_NAME_LENGTH = 60;
+
+    private static final Cache<String, StatementSymbols> STATEMENT_SYMBOLS_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    private final List<DocumentSymbol> documentSymbols;
+    private final List<FoldingRange> foldingRanges;
+
+    private SymbolIndex(List<DocumentSymbol> documentSymbols, List<FoldingRange> foldingRanges) {
+        this.documentSymbols = List.copyOf(documentSymbols);
+        this.foldingRanges = List.copyOf(foldingRanges);
+    }
+
+    public static SymbolIndex of(ParsedScript script) {
+        List<DocumentSymbol> documentSymbols = new ArrayList<>();
+        List<FoldingRange> foldingRanges = new ArrayList<>();
+        for (ParsedStatement statement : script.getStatements()) {
+            StatementSymbols symbols = STATEMENT_SYMBOLS_CACHE.getIfPresent(statement.getSql());
+            if (symbols == null) {
+                symbols = StatementSymbols.of(statement);
+                STATEMENT_SYMBOLS_CACHE.put(statement.getSql(), symbols);
+            }
+            documentSymbols.add(symbols.toDocumentSymbol(statement));
+
+            if (statement.getEnd().getLine() > statement.getStart().getLine()) {
+                FoldingRange foldingRange = new FoldingRange(statement.getStart().getLine(), statement.getEnd().getLine());
+                foldingRange.setKind(FoldingRangeKind.Region);
+                foldingRanges.add(foldingRange);
+            }
+        }
+        return new SymbolIndex(documentSymbols, foldingRanges);
+    }
+
+    /**
+     * Returns a symbol per statement, in order, with the names it defines as children. The symbols are shared and
+     * must not be modified.
+     */
+    public List<DocumentSymbol> getDocumentSymbols() {
+        return documentSymbols;
+    }
+
+    public List<FoldingRange> getFoldingRanges() {
+        return foldingRanges;
+    }
+
+    /**
+     * The symbols of a statement, with the locations of its names relative to the statement text (1-based, as in
+     * Trino node locations).
+     */
+    private static class StatementSymbols {
+        private final String name;
+        private final SymbolKind kind;
+        private final List<NameSymbol> children;
+
+        private StatementSymbols(String name, SymbolKind kind, List<NameSymbol> children) {
+            this.name = name;
+            this.kind = kind;
+            this.children = List.copyOf(children);
+        }
+
+        static StatementSymbols of(ParsedStatement statement) {
+            Optional<Statement> ast = statement.getRecoveredStatement().getStatement();
+            if (ast.isEmpty()) {
+                return new StatementSymbols(summary(statement.getSql()), SymbolKind.Module, List.of());
+            }
+
+            NameCollector collector = new NameCollector();
+            collector.process(ast.get());
+            return new StatementSymbols(name(ast.get(), statement.getSql()), kind(ast.get()), collector.names);
+        }
+
+        DocumentSymbol toDocumentSymbol(ParsedStatement statement) {
+            List<DocumentSymbol> childSymbols = new ArrayList<>(children.size());
+            for (NameSymbol child : children) {
+                Position start = statement.toDocumentPosition(child.line, child.column);
+                Range range = new Range(start, new Position(start.getLine(), start.getCharacter() + child.length));
+                childSymbols.add(new DocumentSymbol(child.name, child.kind, range, range, child.detail));
+            }
+            Range range = statement.getRange();
+            Range selectionRange = new Range(range.getStart(), range.getStart());
+            return new DocumentSymbol(name, kind, range, selectionRange, null, childSymbols);
+        }
+    }
+
+    private static String name(Statement statement, String sql) {
+        if (statement instanceof CreateTable) {
+            return "CREATE TABLE " + ((CreateTable) statement).getName();
+        }
+        if (statement instanceof CreateTableAsSelect) {
+            return "CREATE TABLE " + ((CreateTableAsSelect) statement).getName();
+        }
+        if (statement instanceof CreateView) {
+            return "CREATE VIEW " + ((CreateView) statement).getName();
+        }
+        if (statement instanceof CreateMaterializedView) {
+            return "CREATE MATERIALIZED VIEW " + ((CreateMaterializedView) statement).getName();
+        }
+        if (statement instanceof Insert) {
+            return "INSERT INTO " + ((Insert) statement).getTarget();
+        }
+        if (statement instanceof Delete) {
+            return "DELETE FROM " + ((Delete) statement).getTable().getName();
+        }
+        if (statement instanceof DropTable) {
+            return "DROP TABLE " + ((DropTable) statement).getTableName();
+        }
+        if (statement instanceof DropView) {
+            return "DROP VIEW " + ((DropView) statement).getName();
+        }
+        return summary(sql);
+    }
+
+    private static SymbolKind kind(Statement statement) {
+        if (statement instanceof CreateTable || statement instanceof CreateTableAsSelect) {
+            return SymbolKind.Class;
+        }
+        if (statement instanceof CreateView || statement instanceof CreateMaterializedView) {
+            return SymbolKind.Interface;
+        }
+        return SymbolKind.Module;
+    }
+
+    /**
+     * Returns the first line of a statement, with its whitespace collapsed and truncated.
+     */
+    private static String summary(String sql) {
+        int newline = sql.indexOf('\n');
+        String line = CharMatcher.whitespace().trimAndCollapseFrom(newline < 0 ? sql : sql.substring(0, newline), ' ');
+        return line.length() <= MAX_NAME_LENGTH ? line : line.substring(0, MAX_NAME_LENGTH) + "...";
+    }
+
+    private static class NameSymbol {
+        private final String name;
+        private final SymbolKind kind;
+        private final String detail;
+        private final int line;
+        private final int column;
+        private final int length;
+
+        NameSymbol(Identifier identifier, NodeLocation location, SymbolKind kind, String detail) {
+            this.name = identifier.getValue();
+            this.kind = kind;
+            this.detail = detail;
+            this.line = location.getLineNumber();
+            this.column = location.getColumnNumber();
+            this.length = identifier.getValue().length() + (identifier.isDelimited() ? 2 : 0);
+        }
+    }
+
+    private static class NameCollector extends DefaultTraversalVisitor<Void> {
+        private final List<NameSymbol> names = new ArrayList<>();
+
+        @Override
+        protected Void visitWithQuery(WithQuery node, Void context) {
+            add(node.getName(), SymbolKind.Object, "WITH");
+            return super.visitWithQuery(node, context);
+        }
+
+        @Override
+        protected Void visitAliasedRelation(AliasedRelation node, Void context) {
+            String detail = node.getRelation() instanceof Table ? ((Table) node.getRelation()).getName().toString() : null;
+            add(node.getAlias(), SymbolKind.Variable, detail);
+            return super.visitAliasedRelation(node, context);
+        }
+
+        private void add(Identifier identifier, SymbolKind kind, String detail) {
+            identifier.getLocation().ifPresent(location -> names.add(new NameSymbol(identifier, location, kind, detail)));
+        }
+    }
+}
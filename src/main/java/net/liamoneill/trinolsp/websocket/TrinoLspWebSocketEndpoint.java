@@ -1,18 +1,45 @@
 package net.liamoneill.trinolsp.websocket;
 
+import java.io.IOException;
 import java.util.Collection;
 
+import net.liamoneill.trinolsp.AnalysisEngine;
 import net.liamoneill.trinolsp.TrinoLanguageServer;
 import org.eclipse.lsp4j.jsonrpc.Launcher.Builder;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageClientAware;
 import org.eclipse.lsp4j.websocket.WebSocketEndpoint;
 
+import javax.websocket.CloseReason;
+import javax.websocket.EndpointConfig;
+import javax.websocket.Session;
+
+/**
+ * One instance per websocket connection. Every connection gets its own language server session (opened documents,
+ * pending diagnostics), backed by the analysis engine shared by all connections. Connections past the engine's session
+ * limit are closed with {@link CloseReason.CloseCodes#TRY_AGAIN_LATER}.
+ */
 public class TrinoLspWebSocketEndpoint extends WebSocketEndpoint<LanguageClient> {
 
+    private TrinoLanguageServer languageServer;
+
+    @Override
+    public void onOpen(Session session, EndpointConfig config) {
+        try {
+            super.onOpen(session, config);
+        } catch (AnalysisEngine.SessionLimitExceededException e) {
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, e.getMessage()));
+            } catch (IOException ignored) {
+                // The client is gone already
+            }
+        }
+    }
+
     @Override
     protected void configure(Builder<LanguageClient> builder) {
-        builder.setLocalService(new TrinoLanguageServer());
+        languageServer = new TrinoLanguageServer(AnalysisEngine.getShared());
+        builder.setLocalService(languageServer);
         builder.setRemoteInterface(LanguageClient.class);
     }
 
@@ -22,4 +49,17 @@ public class TrinoLspWebSocketEndpoint extends WebSocketEndpoint<LanguageClient>
                 .filter(LanguageClientAware.class::isInstance)
                 .forEach(languageClientAware -> ((LanguageClientAware) languageClientAware).connect(remoteProxy));
     }
+
+    @Override
+    public void onClose(Session session, CloseReason closeReason) {
+        // Release the session's documents even if the client went away without sending exit.
+        if (languageServer != null) {
+            languageServer.close();
+        }
+        super.onClose(session, closeReason);
+    }
+
+    TrinoLanguageServer getLanguageServer() {
+        return languageServer;
+    }
 }
@@ -0,0 +1,46 @@
+-- Parsed at startup to build the parser's DFA cache before the first request.
+-- Covers the constructs our users write most: keep it representative rather than exhaustive.
+
+select 1;
+
+select e.id, e.type, e.created_at
+from hive.web.events as e
+where e.type = 'click' and e.created_at >= date '2021-01-01'
+order by e.created_at desc
+limit 100;
+
+select p.country, count(*) as profiles, count(distinct p.id), avg(o.total), sum(o.total) filter (where o.status = 'paid')
+from profiles p
+left join orders o on o.profile_id = p.id
+inner join carts c using (profile_id)
+where p.id in (1, 2, 3) and not p.deleted and o.total between 10 and 100 and p.name like 'a%' and p.email is not null
+group by p.country
+having count(*) > 10
+order by 2 desc nulls last;
+
+with recent as (
+    select *, row_number() over (partition by session_id order by created_at desc) as rn
+    from events
+    where created_at > now() - interval '1' day
+)
+select session_id, json_extract_scalar(payload, '$.page'), cast(total as double), try_cast(x as bigint)
+from recent
+cross join unnest(split(tags, ',')) as t (tag)
+where rn = 1 and exists (select 1 from returns r where r.session_id = recent.session_id)
+union all
+select session_id, null, 0e0, case when x > 0 then 1 when x < 0 then -1 else 0 end
+from (values (1, 'a'), (2, 'b')) as v (session_id, x);
+
+select date_trunc('hour', created_at), approx_percentile(latency, 0.99), array_agg(distinct type), map_agg(k, v), transform(a, x -> x + 1)
+from events
+group by grouping sets ((1), ());
+
+insert into hive.web.daily_events select * from events where created_at < current_date;
+
+create table if not exists hive.web.events_copy with (format = 'ORC') as select * from events with no data;
+
+delete from carts where created_at < timestamp '2020-01-01 00:00:00';
+
+explain analyze select count(*) from orders;
+
+show tables from hive.web like 'ev%';
@@ -0,0 +1,113 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.catalog.CatalogIndex;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnalysisEngineTest {
+    private static final String URI = "file:///query.sql";
+
+    @Test
+    public void testSessionsPastTheLimitAreRejected() {
+        AnalysisEngine engine = engine(2);
+        TrinoLanguageServer first = new TrinoLanguageServer(engine);
+        TrinoLanguageServer second = new TrinoLanguageServer(engine);
+        assertEquals(2, engine.getActiveSessions());
+
+        AnalysisEngine.SessionLimitExceededException e = assertThrows(AnalysisEngine.SessionLimitExceededException.class,
+                () -> new TrinoLanguageServer(engine));
+        assertTrue(e.getMessage().startsWith("Too many sessions"), e.getMessage());
+        assertEquals(2, engine.getActiveSessions());
+
+        // Closing a session makes room for another, closing it twice does not make room for two
+        first.close();
+        first.close();
+        assertEquals(1, engine.getActiveSessions());
+        TrinoLanguageServer third = new TrinoLanguageServer(engine);
+        assertThrows(AnalysisEngine.SessionLimitExceededException.class, () -> new TrinoLanguageServer(engine));
+
+        second.close();
+        third.close();
+        assertEquals(0, engine.getActiveSessions());
+    }
+
+    @Test
+    public void testSessionsShareTheEngineButNotTheirDocuments() {
+        AnalysisEngine engine = engine(10);
+        TrinoLanguageServer first = new TrinoLanguageServer(engine);
+        TrinoLanguageServer second = new TrinoLanguageServer(engine);
+        first.connect(new NoOpClient());
+        second.connect(new NoOpClient());
+        try {
+            assertSame(first.getAnalysisEngine(), second.getAnalysisEngine());
+            assertSame(first.getAnalysisEngine().getRequestExecutor(), second.getAnalysisEngine().getRequestExecutor());
+            assertSame(first.getAnalysisEngine().getCatalogProvider().getIndex(), second.getAnalysisEngine().getCatalogProvider().getIndex());
+
+            first.getTextDocumentService().didOpen(new DidOpenTextDocumentParams(new TextDocumentItem(URI, "sql", 1, "select 1")));
+            assertNotNull(first.getTextDocumentService().getOpenedDocument(URI));
+            assertNull(second.getTextDocumentService().getOpenedDocument(URI));
+        }
+        finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testDefaultSessionsUseTheSharedEngine() {
+        TrinoLanguageServer first = new TrinoLanguageServer();
+        TrinoLanguageServer second = new TrinoLanguageServer();
+        try {
+            assertSame(AnalysisEngine.getShared(), first.getAnalysisEngine());
+            assertSame(AnalysisEngine.getShared(), second.getAnalysisEngine());
+        }
+        finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    private static AnalysisEngine engine(int maxSessions) {
+        CatalogIndex index = new CatalogIndex.Builder().build();
+        return new AnalysisEngine(RequestExecutor.fromSystemProperties(), () -> index,
+                new AnalysisEngine.SessionLimits(100, 1 << 20, maxSessions));
+    }
+
+    private static class NoOpClient implements LanguageClient {
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
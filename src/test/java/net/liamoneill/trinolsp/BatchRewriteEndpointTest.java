@@ -0,0 +1,64 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.http.BatchRewriteEndpoint;
+import net.liamoneill.trinolsp.http.RewriteEndpoint;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchRewriteEndpointTest {
+    @Test
+    public void testResultsAreInStatementOrder() {
+        // More statements than the batch window, so results are collected while later statements are still queued
+        List<String> statements = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            statements.add("select " + i + " from t" + i);
+        }
+        List<RewriteEndpoint.Response> results = new BatchRewriteEndpoint().handle(new BatchRewriteEndpoint.Request(statements)).getResults();
+
+        assertEquals(statements.size(), results.size());
+        for (int i = 0; i < statements.size(); i++) {
+            assertNull(results.get(i).getErrorMessage());
+            assertEquals(new RewriteEndpoint().handle(new RewriteEndpoint.Request(statements.get(i))).getSql(), results.get(i).getSql());
+        }
+    }
+
+    @Test
+    public void testErrorsAreReportedPerStatement() {
+        List<String> statements = List.of(
+                "select a from t",
+                "select a from t where",
+                "select '" + "x".repeat(2 << 20) + "'",
+                "select b from u");
+        List<RewriteEndpoint.Response> results = new BatchRewriteEndpoint().handle(new BatchRewriteEndpoint.Request(statements)).getResults();
+
+        assertEquals(4, results.size());
+        assertNotNull(results.get(0).getSql());
+        assertNull(results.get(1).getSql());
+        assertTrue(results.get(1).getErrorMessage().startsWith("mismatched input"), results.get(1).getErrorMessage());
+        assertNull(results.get(2).getSql());
+        assertTrue(results.get(2).getErrorMessage().startsWith("SQL is too large to rewrite"), results.get(2).getErrorMessage());
+        assertNotNull(results.get(3).getSql());
+        assertNull(results.get(3).getErrorMessage());
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        assertEquals(List.of(), new BatchRewriteEndpoint().handle(new BatchRewriteEndpoint.Request(null)).getResults());
+    }
+
+    @Test
+    public void testTooManyStatementsAreRejected() {
+        BatchRewriteEndpoint.Request request = new BatchRewriteEndpoint.Request(Collections.nCopies(10_001, "select 1"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new BatchRewriteEndpoint().handle(request));
+        assertTrue(e.getMessage().startsWith("Too many statements in batch"), e.getMessage());
+    }
+}
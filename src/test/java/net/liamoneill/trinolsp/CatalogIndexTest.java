@@ -0,0 +1,82 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.catalog.CatalogIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CatalogIndexTest {
+    private static final CatalogIndex INDEX = new CatalogIndex.Builder()
+            .addTable("hive", "web", "events", List.of("id", "type"), List.of("varchar", "varchar"), 10)
+            .addTable("hive", "web", "Event_Types", List.of("type"), List.of("varchar"), 1)
+            .addTable("hive", "shop", "events", List.of("id", "order_id"), List.of("varchar", "bigint"), 5)
+            .addTable("hive", "shop", "orders", List.of("order_id", "total"), List.of("bigint", "double"), 20)
+            .build();
+
+    @Test
+    public void testRankedTables() {
+        assertEquals(List.of("hive.web.events", "hive.shop.events", "hive.web.Event_Types"), tables(null, null, "EV", 10));
+        assertEquals(List.of("hive.web.events"), tables(null, null, "e", 1));
+        assertEquals(List.of(), tables(null, null, "x", 10));
+    }
+
+    @Test
+    public void testRankedTablesOfSchema() {
+        assertEquals(List.of("hive.shop.orders", "hive.shop.events"), tables(null, "shop", "", 10));
+        assertEquals(List.of("hive.shop.orders"), tables(null, "SHOP", "o", 10));
+        assertEquals(List.of(), tables(null, "warehouse", "", 10));
+        assertEquals(List.of("hive.web.events", "hive.web.Event_Types"), tables(null, "WEB", "events", 10));
+    }
+
+    @Test
+    public void testRankedTablesOfCatalogSchema() {
+        CatalogIndex index = new CatalogIndex.Builder()
+                .addTable("hive", "web", "events", List.of(), List.of(), 10)
+                .addTable("iceberg", "web", "events", List.of(), List.of(), 20)
+                .addTable("hive", "web_archive", "events", List.of(), List.of(), 50)
+                .build();
+        assertEquals(List.of("iceberg.web.events", "hive.web.events"), tables(index, null, "web", "", 10));
+        assertEquals(List.of("hive.web.events"), tables(index, "HIVE", "web", "ev", 10));
+        assertEquals(List.of("iceberg.web.events"), tables(index, "iceberg", "web", "", 10));
+        assertEquals(List.of(), tables(index, "iceberg", "web_archive", "", 10));
+    }
+
+    @Test
+    public void testRankedSchemas() {
+        // shop's tables are used 25 times, web's 11
+        assertEquals(List.of("shop", "web"), INDEX.rankedSchemas("hive", "", 10));
+        assertEquals(List.of("web"), INDEX.rankedSchemas("HIVE", "w", 10));
+        assertEquals(List.of(), INDEX.rankedSchemas("web", "", 10));
+    }
+
+    @Test
+    public void testTablesOfEqualFrequencyAreInNameOrder() {
+        CatalogIndex index = new CatalogIndex.Builder()
+                .addTable("hive", "web", "sessions", List.of(), List.of())
+                .addTable("hive", "shop", "sessions", List.of(), List.of())
+                .addTable("hive", "web", "Sales", List.of(), List.of())
+                .build();
+        assertEquals(List.of("hive.web.Sales", "hive.shop.sessions", "hive.web.sessions"), tables(index, null, null, "s", 10));
+    }
+
+    @Test
+    public void testRankedColumns() {
+        assertEquals(List.of("order_id"), INDEX.rankedColumns("o", 10));
+        assertEquals(List.of("order_id"), INDEX.rankedColumns("ordid", 10));
+        // Used by two tables each, then by one
+        assertEquals(List.of("id", "order_id", "type", "total"), INDEX.rankedColumns("", 10));
+    }
+
+    private static List<String> tables(String catalog, String schema, String prefix, int limit) {
+        return tables(INDEX, catalog, schema, prefix, limit);
+    }
+
+    private static List<String> tables(CatalogIndex index, String catalog, String schema, String prefix, int limit) {
+        return index.rankedTables(catalog, schema, prefix, limit).stream()
+                .map(CatalogIndex.Table::getQualifiedName)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,118 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.completion.CodeCompletionCore;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.ATNType;
+import org.antlr.v4.runtime.atn.AtomTransition;
+import org.antlr.v4.runtime.atn.BasicState;
+import org.antlr.v4.runtime.atn.EpsilonTransition;
+import org.antlr.v4.runtime.atn.RuleStartState;
+import org.antlr.v4.runtime.atn.RuleStopState;
+import org.antlr.v4.runtime.atn.RuleTransition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CodeCompletionCoreTest {
+    private static final int A = 1;
+    private static final int X = 2;
+    private static final int Y = 3;
+    private static final int P = 4;
+
+    private static final int START = 0;
+    private static final int LEFT = 1;
+    private static final int RIGHT = 2;
+    private static final int SHARED = 3;
+    private static final int PREFERRED = 4;
+
+    /**
+     * <pre>
+     * start: left | right;
+     * left: shared X;
+     * right: shared Y;
+     * shared: A preferred;
+     * preferred: P;
+     * </pre>
+     */
+    private static final CodeCompletionCore CORE = new GrammarBuilder(5, P).build();
+
+    @Test
+    public void testRuleEnteredBeforeCaretFromTwoCallers() {
+        // shared is entered at the same token from left and from right, and reaches preferred at the caret
+        CodeCompletionCore.Candidates candidates = CORE.collectCandidates(new int[] {A});
+        assertEquals(Map.of(PREFERRED, Set.of(List.of(START, LEFT, SHARED), List.of(START, RIGHT, SHARED))), candidates.getRules());
+        assertTrue(candidates.hasRuleWithin(PREFERRED, LEFT));
+        assertTrue(candidates.hasRuleWithin(PREFERRED, RIGHT));
+    }
+
+    @Test
+    public void testTokensAfterRuleEndingBeforeCaret() {
+        CodeCompletionCore.Candidates candidates = CORE.collectCandidates(new int[] {A, P});
+        assertEquals(Set.of(X, Y), candidates.getTokens());
+        assertTrue(candidates.getRules().isEmpty());
+    }
+
+    private static class GrammarBuilder {
+        private final ATN atn;
+
+        GrammarBuilder(int rules, int maxTokenType) {
+            atn = new ATN(ATNType.PARSER, maxTokenType);
+            atn.ruleToStartState = new RuleStartState[rules];
+            atn.ruleToStopState = new RuleStopState[rules];
+            for (int rule = 0; rule < rules; rule++) {
+                RuleStartState start = new RuleStartState();
+                start.ruleIndex = rule;
+                atn.addState(start);
+                RuleStopState stop = new RuleStopState();
+                stop.ruleIndex = rule;
+                atn.addState(stop);
+                start.stopState = stop;
+                atn.ruleToStartState[rule] = start;
+                atn.ruleToStopState[rule] = stop;
+            }
+        }
+
+        CodeCompletionCore build() {
+            BasicState left = state(START);
+            BasicState right = state(START);
+            atn.ruleToStartState[START].addTransition(new EpsilonTransition(left));
+            atn.ruleToStartState[START].addTransition(new EpsilonTransition(right));
+            end(call(left, LEFT));
+            end(call(right, RIGHT));
+            end(token(call(atn.ruleToStartState[LEFT], SHARED), X));
+            end(token(call(atn.ruleToStartState[RIGHT], SHARED), Y));
+            end(call(token(atn.ruleToStartState[SHARED], A), PREFERRED));
+            end(token(atn.ruleToStartState[PREFERRED], P));
+            return new CodeCompletionCore(atn, START, Set.of(PREFERRED));
+        }
+
+        private BasicState state(int rule) {
+            BasicState state = new BasicState();
+            state.ruleIndex = rule;
+            atn.addState(state);
+            return state;
+        }
+
+        private ATNState token(ATNState from, int tokenType) {
+            BasicState next = state(from.ruleIndex);
+            from.addTransition(new AtomTransition(next, tokenType));
+            return next;
+        }
+
+        private ATNState call(ATNState from, int rule) {
+            BasicState follow = state(from.ruleIndex);
+            from.addTransition(new RuleTransition(atn.ruleToStartState[rule], rule, 0, follow));
+            return follow;
+        }
+
+        private void end(ATNState from) {
+            from.addTransition(new EpsilonTransition(atn.ruleToStopState[from.ruleIndex]));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.catalog.CatalogIndex;
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.CompletionItemKind;
+import org.eclipse.lsp4j.CompletionParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CompletionRunnerTest {
+    private static final CatalogIndex INDEX = new CatalogIndex.Builder()
+            .addTable("hive", "web", "events", List.of("id"), List.of("varchar"), 10)
+            .addTable("hive", "web", "pages", List.of("url"), List.of("varchar"), 5)
+            .addTable("hive", "shop", "orders", List.of("order_id"), List.of("bigint"), 20)
+            .addTable("iceberg", "web", "exports", List.of("id"), List.of("varchar"), 1)
+            .build();
+
+    private TrinoLanguageServer server;
+
+    @BeforeEach
+    public void setUp() {
+        server = new TrinoLanguageServer(new AnalysisEngine(RequestExecutor.fromSystemProperties(), () -> INDEX,
+                AnalysisEngine.SessionLimits.fromSystemProperties()));
+        server.connect(new NoOpClient());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testUnqualifiedTables() {
+        assertEquals(List.of("events", "exports"), labels("select * from e", CompletionItemKind.Class));
+    }
+
+    @Test
+    public void testTablesOfSchema() {
+        assertEquals(List.of("events", "pages", "exports"), labels("select * from web.", CompletionItemKind.Class));
+        assertEquals(List.of("pages"), labels("select * from web.p", CompletionItemKind.Class));
+    }
+
+    @Test
+    public void testSchemasOfCatalog() {
+        assertEquals(List.of(), labels("select * from hive.", CompletionItemKind.Class));
+        assertEquals(List.of("shop", "web"), labels("select * from hive.", CompletionItemKind.Module));
+    }
+
+    @Test
+    public void testTablesOfCatalogAndSchema() {
+        assertEquals(List.of("events", "pages"), labels("select * from hive.web.", CompletionItemKind.Class));
+        assertEquals(List.of("exports"), labels("select * from iceberg.web.", CompletionItemKind.Class));
+        assertEquals(List.of(), labels("select * from iceberg.shop.", CompletionItemKind.Class));
+    }
+
+    private List<String> labels(String text, CompletionItemKind kind) {
+        String uri = "file:///" + Integer.toHexString(text.hashCode()) + ".sql";
+        server.getTextDocumentService().didOpen(new DidOpenTextDocumentParams(new TextDocumentItem(uri, "sql", 1, text)));
+        CompletionParams params = new CompletionParams(new TextDocumentIdentifier(uri), new Position(0, text.length()));
+        List<CompletionItem> items = new CompletionRunner(server).compute(params).join().getRight().getItems();
+        return items.stream()
+                .filter(item -> item.getKind() == kind)
+                .map(CompletionItem::getLabel)
+                .collect(Collectors.toList());
+    }
+
+    private static class NoOpClient implements LanguageClient {
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.liamoneill.trinolsp;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.sql.ParseTimeoutException;
+import net.liamoneill.trinolsp.sql.Parser;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.DocumentFormattingParams;
+import org.eclipse.lsp4j.FormattingOptions;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DegradationTest {
+    private static final String URI = "file:///large.sql";
+
+    @Test
+    public void testParseExceedingItsDeadlineTimesOut() {
+        String sql = "SELECT " + "a, ".repeat(200_000) + "a FROM t";
+        Either<Statement, ParsingException> result = Parser.parse(sql, 1);
+        assertTrue(result.isRight());
+        assertTrue(result.getRight() instanceof ParseTimeoutException, result.getRight().getMessage());
+        assertEquals(1, ((ParseTimeoutException) result.getRight()).getTimeoutMillis());
+    }
+
+    @Test
+    public void testLargeDocumentIsNotFormatted() throws Exception {
+        List<MessageParams> messages = new CopyOnWriteArrayList<>();
+        TrinoLanguageServer server = new TrinoLanguageServer();
+        server.connect(new MessageRecordingClient(messages));
+        try {
+            String text = "select 1;\n".repeat(30_000);
+            server.getTextDocumentService().didOpen(new DidOpenTextDocumentParams(new TextDocumentItem(URI, "sql", 1, text)));
+
+            DocumentFormattingParams params = new DocumentFormattingParams(new TextDocumentIdentifier(URI), new FormattingOptions(4, true));
+            assertTrue(new FormatterRunner(server).compute(params).get().isEmpty());
+            assertEquals(1, messages.size());
+            assertTrue(messages.get(0).getMessage().startsWith("Document is too large to format"), messages.get(0).getMessage());
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    private static class MessageRecordingClient implements LanguageClient {
+        private final List<MessageParams> messages;
+
+        MessageRecordingClient(List<MessageParams> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+            messages.add(messageParams);
+        }
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
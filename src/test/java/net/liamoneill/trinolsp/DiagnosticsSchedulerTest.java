@@ -0,0 +1,102 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DiagnosticsSchedulerTest {
+    private static final String URI = "file:///test.sql";
+    // Longer than the default debounce window, plus time to compute the diagnostics
+    private static final long SETTLE_MILLIS = 1_500;
+
+    private final List<PublishDiagnosticsParams> published = new CopyOnWriteArrayList<>();
+    private TrinoLanguageServer server;
+
+    @BeforeEach
+    public void setUp() {
+        server = new TrinoLanguageServer();
+        server.connect(new RecordingClient());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testRapidChangesPublishOnce() throws Exception {
+        open("select 1");
+        for (int version = 2; version <= 10; version++) {
+            change(version, "select " + version);
+        }
+
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(1, published.size());
+        assertEquals(10, published.get(0).getVersion());
+    }
+
+    @Test
+    public void testOldVersionIsNeverPublishedAfterNewerOne() throws Exception {
+        open("select 1");
+        DocumentSnapshot oldVersion = server.getTextDocumentService().getOpenedDocument(URI);
+        change(2, "select 2");
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(1, published.size());
+
+        server.getDiagnosticsScheduler().schedule(oldVersion);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(1, published.size());
+        assertEquals(2, published.get(0).getVersion());
+    }
+
+    private void open(String text) {
+        server.getTextDocumentService().didOpen(new DidOpenTextDocumentParams(new TextDocumentItem(URI, "sql", 1, text)));
+    }
+
+    private void change(int version, String text) {
+        server.getTextDocumentService().didChange(new DidChangeTextDocumentParams(
+                new VersionedTextDocumentIdentifier(URI, version),
+                List.of(new TextDocumentContentChangeEvent(text))));
+    }
+
+    private class RecordingClient implements LanguageClient {
+        @Override
+        public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+            published.add(diagnostics);
+        }
+
+        @Override
+        public void telemetryEvent(Object object) {
+        }
+
+        @Override
+        public void showMessage(MessageParams messageParams) {
+        }
+
+        @Override
+        public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams requestParams) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void logMessage(MessageParams message) {
+        }
+    }
+}
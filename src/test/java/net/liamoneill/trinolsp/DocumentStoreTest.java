@@ -0,0 +1,55 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.DocumentSnapshot;
+import net.liamoneill.trinolsp.document.DocumentStore;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class DocumentStoreTest {
+    private static final String URI = "file:///query.sql";
+
+    @Test
+    public void testChangesDoNotAffectEarlierSnapshots() {
+        DocumentStore store = new DocumentStore();
+        DocumentSnapshot opened = store.open(new TextDocumentItem(URI, "trino", 1, "select 1\nfrom t"));
+
+        TextDocumentContentChangeEvent change = new TextDocumentContentChangeEvent(
+                new Range(new Position(1, 5), new Position(1, 6)), 1, "events");
+        DocumentSnapshot changed = store.change(URI, 2, List.of(change));
+
+        assertEquals("select 1\nfrom t", opened.getText());
+        assertEquals(1, opened.getVersion());
+        assertEquals("select 1\nfrom events", changed.getText());
+        assertEquals(2, changed.getVersion());
+        assertEquals(changed, store.get(URI));
+    }
+
+    @Test
+    public void testChangeWithoutVersionIncrementsIt() {
+        DocumentStore store = new DocumentStore();
+        store.open(new TextDocumentItem(URI, "trino", 3, "select 1"));
+
+        DocumentSnapshot changed = store.change(URI, null, List.of(new TextDocumentContentChangeEvent("select 2")));
+
+        assertEquals(4, changed.getVersion());
+        assertEquals("select 2", changed.getText());
+    }
+
+    @Test
+    public void testChangeToClosedDocumentIsIgnored() {
+        DocumentStore store = new DocumentStore();
+        store.open(new TextDocumentItem(URI, "trino", 1, "select 1"));
+        store.close(URI);
+
+        assertNull(store.change(URI, 2, List.of(new TextDocumentContentChangeEvent("select 2"))));
+        assertNull(store.get(URI));
+    }
+}
@@ -0,0 +1,33 @@
+package net.liamoneill.trinolsp;
+
+import io.trino.sql.parser.ParsingOptions;
+import io.trino.sql.parser.SqlParser;
+import io.trino.sql.tree.Statement;
+import net.liamoneill.trinolsp.sql.Formatter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FormatterTest {
+    private static final SqlParser SQL_PARSER = new SqlParser();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "select a, b as c from t where a = 1 and b > 2 or c is null order by a desc limit 10",
+            "select * from t where a in (1, 2, 3) and b not in ('x', 'y')",
+            "select coalesce(a and b, c or d) from t",
+            "select count(*), sum(a) filter (where b > 1) over (partition by c order by d rows between 1 preceding and current row) from t group by rollup (c, d)",
+            "select (select max(a) from u) as m from t where exists (select 1 from u where u.id = t.id)",
+            "select array[1, 2][1], case when a then 'x' else 'y' end from t cross join u",
+            "select x from (values (1, 'a'), (2, 'b')) as v (x, y) having x > 1",
+    })
+    public void testFormattedSqlParsesToTheSameTree(String sql) {
+        Statement statement = parse(sql);
+        assertEquals(statement, parse(Formatter.format(statement)));
+    }
+
+    private static Statement parse(String sql) {
+        return SQL_PARSER.createStatement(sql, new ParsingOptions());
+    }
+}
@@ -0,0 +1,33 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.eclipse.lsp4j.Position;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LineIndexTest {
+    private static final String TEXT = "select 1\r\nfrom t\n\nwhere x";
+
+    @Test
+    public void testPositionAt() {
+        LineIndex lineIndex = LineIndex.of(TEXT);
+
+        assertEquals(4, lineIndex.getLineCount());
+        assertEquals(new Position(0, 0), lineIndex.positionAt(0));
+        assertEquals(new Position(0, 9), lineIndex.positionAt(9));
+        assertEquals(new Position(1, 0), lineIndex.positionAt(10));
+        assertEquals(new Position(2, 0), lineIndex.positionAt(17));
+        assertEquals(new Position(3, 7), lineIndex.positionAt(TEXT.length()));
+    }
+
+    @Test
+    public void testOffsetAtClampsToLineEnd() {
+        LineIndex lineIndex = LineIndex.of(TEXT);
+
+        assertEquals(8, lineIndex.offsetAt(new Position(0, 100)));
+        assertEquals(12, lineIndex.offsetAt(new Position(1, 2)));
+        assertEquals(17, lineIndex.offsetAt(new Position(2, 5)));
+        assertEquals(TEXT.length(), lineIndex.offsetAt(new Position(9, 0)));
+    }
+}
@@ -0,0 +1,56 @@
+package net.liamoneill.trinolsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MyersDiffTest {
+    @Test
+    public void testHunks() {
+        int[] a = {1, 2, 3, 4, 5, 6};
+        int[] b = {1, 9, 3, 4, 6, 7};
+        assertArrayEquals(new int[] {1, 2, 1, 2, 4, 5, 4, 4, 6, 6, 5, 6}, MyersDiff.diff(a, b, 1_000));
+        assertArrayEquals(new int[0], MyersDiff.diff(a, a, 1_000));
+        assertArrayEquals(new int[] {0, 0, 0, 2}, MyersDiff.diff(new int[0], new int[] {1, 2}, 1_000));
+    }
+
+    @Test
+    public void testRandomSequences() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000; i++) {
+            int[] a = random.ints(random.nextInt(600), 0, 50).toArray();
+            int[] b = random.ints(random.nextInt(600), 0, 50).toArray();
+            assertArrayEquals(b, apply(a, b, MyersDiff.diff(a, b, 1_000)));
+        }
+    }
+
+    @Test
+    public void testTextDiff() {
+        String original = "select  a, b from t -- 😀\n";
+        String revised = "SELECT\n  a,\n  b\nFROM\n  t -- 😀\n";
+        int[] hunks = TextDiff.diff(original, revised, 1_000);
+        StringBuilder builder = new StringBuilder(original);
+        for (int i = hunks.length - 4; i >= 0; i -= 4) {
+            builder.replace(hunks[i], hunks[i + 1], revised.substring(hunks[i + 2], hunks[i + 3]));
+        }
+        assertEquals(revised, builder.toString());
+    }
+
+    private static int[] apply(int[] a, int[] b, int[] hunks) {
+        int[] result = new int[b.length];
+        int size = 0;
+        int position = 0;
+        for (int i = 0; i < hunks.length; i += 4) {
+            System.arraycopy(a, position, result, size, hunks[i] - position);
+            size += hunks[i] - position;
+            System.arraycopy(b, hunks[i + 2], result, size, hunks[i + 3] - hunks[i + 2]);
+            size += hunks[i + 3] - hunks[i + 2];
+            position = hunks[i + 1];
+        }
+        System.arraycopy(a, position, result, size, a.length - position);
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.sql.ParsedScript;
+import net.liamoneill.trinolsp.sql.ParsedStatement;
+import net.liamoneill.trinolsp.sql.Parser;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParsedScriptTest {
+    private static final ParsedScript SCRIPT = Parser.parseScript("select 1;\nselect 2;\nselect 3;\n");
+
+    @Test
+    public void testStatementAt() {
+        assertEquals("select 1", SCRIPT.statementAt(new Position(0, 0)).get().getSql());
+        assertEquals("select 1", SCRIPT.statementAt(new Position(0, 8)).get().getSql());
+        assertTrue(SCRIPT.statementAt(new Position(0, 9)).isEmpty());
+        assertEquals("select 2", SCRIPT.statementAt(new Position(1, 0)).get().getSql());
+        assertEquals("select 3", SCRIPT.statementAt(new Position(2, 3)).get().getSql());
+        assertTrue(SCRIPT.statementAt(new Position(3, 0)).isEmpty());
+    }
+
+    @Test
+    public void testStatementAtOrBefore() {
+        assertEquals("select 1", SCRIPT.statementAtOrBefore(0).get().getSql());
+        assertEquals("select 1", SCRIPT.statementAtOrBefore(9).get().getSql());
+        assertEquals("select 2", SCRIPT.statementAtOrBefore(12).get().getSql());
+        assertEquals("select 3", SCRIPT.statementAtOrBefore(30).get().getSql());
+        assertTrue(Parser.parseScript("  select 1").statementAtOrBefore(1).isEmpty());
+        assertTrue(Parser.parseScript("").statementAtOrBefore(0).isEmpty());
+    }
+
+    @Test
+    public void testStatementsIn() {
+        assertEquals(List.of("select 2"), sql(SCRIPT.statementsIn(new Range(new Position(1, 2), new Position(1, 4)))));
+        assertEquals(List.of("select 2", "select 3"), sql(SCRIPT.statementsIn(new Range(new Position(1, 0), new Position(2, 0)))));
+        assertEquals(List.of(), sql(SCRIPT.statementsIn(new Range(new Position(3, 0), new Position(3, 0)))));
+    }
+
+    @Test
+    public void testStatementBefore() {
+        assertEquals("select 1", SCRIPT.statementBefore(8).get().getSql());
+        assertEquals("select 2", SCRIPT.statementBefore(18).get().getSql());
+        assertTrue(SCRIPT.statementBefore(7).isEmpty());
+    }
+
+    private static List<String> sql(List<ParsedStatement> statements) {
+        return statements.stream().map(ParsedStatement::getSql).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,67 @@
+package net.liamoneill.trinolsp;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.ComparisonExpression;
+import io.trino.sql.tree.Identifier;
+import io.trino.sql.tree.LongLiteral;
+import io.trino.sql.tree.Query;
+import io.trino.sql.tree.QuerySpecification;
+import io.trino.sql.tree.SingleColumn;
+import io.trino.sql.tree.StringLiteral;
+import net.liamoneill.trinolsp.sql.Parser;
+import net.liamoneill.trinolsp.sql.RecoveredStatement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParserRecoveryTest {
+    @Test
+    public void testValidStatementIsNotPartial() {
+        RecoveredStatement recovered = Parser.parseRecovering("SELECT a FROM t");
+        assertFalse(recovered.isPartial());
+        assertTrue(recovered.getStatement().isPresent());
+    }
+
+    @Test
+    public void testRecoversStatementBeingTyped() {
+        RecoveredStatement recovered = Parser.parseRecovering("SELECT json_extract(a, '$.b') FROM t WHERE");
+        assertTrue(recovered.isPartial());
+        assertEquals(1, recovered.getErrors().size());
+
+        QuerySpecification query = (QuerySpecification) ((Query) recovered.getStatement().get()).getQueryBody();
+        assertTrue(query.getFrom().isPresent());
+        assertEquals(1, query.getLocation().get().getLineNumber());
+    }
+
+    @Test
+    public void testReportsErrorsAfterTheFirst() {
+        RecoveredStatement recovered = Parser.parseRecovering("SELECT a FROM t\nWHERE x = = 1\nAND y = = 2");
+        List<Integer> lines = recovered.getErrors().stream()
+                .map(ParsingException::getLineNumber)
+                .collect(Collectors.toList());
+        assertEquals(2, lines.get(0));
+        assertTrue(lines.contains(3), lines.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT '\uD83D\uDE00\uD83D\uDE00' AS a FROM t WHERE x = = 1",
+            "SELECT '\uD83D\uDE00\uD83D\uDE00' AS a\nFROM t\nWHERE x = = 1",
+    })
+    public void testRecoversAfterSupplementaryCharacters(String sql) {
+        // ANTLR counts code points, so each emoji before the error is one position less than in the UTF-16 text
+        RecoveredStatement recovered = Parser.parseRecovering(sql);
+        assertTrue(recovered.isPartial());
+
+        QuerySpecification query = (QuerySpecification) ((Query) recovered.getStatement().get()).getQueryBody();
+        assertEquals(new StringLiteral("\uD83D\uDE00\uD83D\uDE00"), ((SingleColumn) query.getSelect().getSelectItems().get(0)).getExpression());
+        assertEquals(new ComparisonExpression(ComparisonExpression.Operator.EQUAL, new Identifier("x"), new LongLiteral("1")), query.getWhere().get());
+    }
+}
@@ -0,0 +1,44 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.completion.RankedPrefixIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RankedPrefixIndexTest {
+    private static final List<String> NAMES = List.of("order_id", "orders", "Order_Date", "origin", "total", "ordinal");
+    private static final RankedPrefixIndex INDEX = RankedPrefixIndex.build(NAMES, new int[] {5, 9, 5, 1, 7, 0});
+
+    @Test
+    public void testSearchRanksByWeight() {
+        assertEquals(List.of("orders", "Order_Date", "order_id", "origin", "ordinal"), search("or", 10));
+        assertEquals(List.of("orders", "Order_Date"), search("OR", 2));
+        assertEquals(List.of("total"), search("t", 10));
+        assertEquals(List.of("orders", "total", "Order_Date", "order_id", "origin", "ordinal"), search("", 10));
+        assertEquals(List.of(), search("x", 10));
+    }
+
+    @Test
+    public void testSearchFillsWithFuzzyMatches() {
+        assertEquals(List.of("order_id"), search("ordid", 10));
+        assertEquals(List.of("Order_Date", "order_id"), search("ord_d", 10));
+    }
+
+    @Test
+    public void testSearchFiltersRejectedNames() {
+        int[] ids = INDEX.search("or", 10, id -> NAMES.get(id).length() > 6);
+        assertEquals(List.of("Order_Date", "order_id", "ordinal"), names(ids));
+    }
+
+    private static List<String> search(String prefix, int limit) {
+        return names(INDEX.search(prefix, limit, id -> true));
+    }
+
+    private static List<String> names(int[] ids) {
+        return Arrays.stream(ids).mapToObj(NAMES::get).collect(Collectors.toList());
+    }
+}
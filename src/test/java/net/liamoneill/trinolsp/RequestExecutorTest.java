@@ -0,0 +1,72 @@
+package net.liamoneill.trinolsp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestExecutorTest {
+    @Test
+    public void testFloodOfOneTypeDoesNotStarveAnother() throws Exception {
+        RequestExecutor executor = new RequestExecutor(RequestExecutor.Mode.PLATFORM, 4,
+                Map.of(RequestExecutor.RequestType.REWRITE, 2));
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> rewrites = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            rewrites.add(executor.execute(RequestExecutor.RequestType.REWRITE, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }));
+        }
+
+        // Every rewrite is blocked, yet a completion still gets a thread
+        assertEquals("done", executor.submit(RequestExecutor.RequestType.COMPLETION, () -> "done").get(5, TimeUnit.SECONDS));
+        assertFalse(rewrites.get(rewrites.size() - 1).isDone());
+
+        release.countDown();
+        CompletableFuture.allOf(rewrites.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testCancelledWorkDoesNotRun() throws Exception {
+        RequestExecutor executor = new RequestExecutor(RequestExecutor.Mode.PLATFORM, 2,
+                Map.of(RequestExecutor.RequestType.DIAGNOSTICS, 1));
+
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocking = executor.execute(RequestExecutor.RequestType.DIAGNOSTICS, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Void> cancelled = executor.execute(RequestExecutor.RequestType.DIAGNOSTICS, runs::incrementAndGet);
+        cancelled.cancel(false);
+
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        // The next task of the type runs after the cancelled one was skipped
+        executor.execute(RequestExecutor.RequestType.DIAGNOSTICS, () -> { }).get(5, TimeUnit.SECONDS);
+        assertTrue(cancelled.isCancelled());
+        assertEquals(0, runs.get());
+    }
+}
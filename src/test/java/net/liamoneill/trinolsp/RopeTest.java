@@ -0,0 +1,53 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.Rope;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RopeTest {
+    @Test
+    public void testOffsetAtClampsToLineEnd() {
+        Rope rope = Rope.of("select 1\r\nfrom t\nwhere x");
+
+        assertEquals(0, rope.offsetAt(0, 0));
+        assertEquals(8, rope.offsetAt(0, 100));
+        assertEquals(12, rope.offsetAt(1, 2));
+        assertEquals(24, rope.offsetAt(2, 100));
+        assertEquals(rope.length(), rope.offsetAt(5, 0));
+    }
+
+    @Test
+    public void testReplaceMatchesStringBuilder() {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder();
+        Rope rope = Rope.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            int start = random.nextInt(expected.length() + 1);
+            int end = Math.min(expected.length(), start + random.nextInt(8));
+            String replacement = random.nextInt(4) == 0 ? "\n" : "select ";
+            if (random.nextInt(1_000) == 0) {
+                replacement = "from events\n".repeat(500);
+            }
+
+            expected.replace(start, end, replacement);
+            rope = rope.replace(start, end, replacement);
+        }
+
+        String text = expected.toString();
+        assertEquals(text, rope.toString());
+
+        int line = 0;
+        for (int offset = 0; offset < text.length(); offset++) {
+            assertEquals(line, rope.lineAt(offset));
+            if (text.charAt(offset) == '\n') {
+                line++;
+                assertEquals(offset + 1, rope.lineStartOffset(line));
+            }
+        }
+        assertEquals(line + 1, rope.lineCount());
+    }
+}
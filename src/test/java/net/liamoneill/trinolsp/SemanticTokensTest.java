@@ -0,0 +1,68 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.LineIndex;
+import net.liamoneill.trinolsp.sql.SemanticTokenizer;
+import org.eclipse.lsp4j.SemanticTokensEdit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SemanticTokensTest {
+    private static final int KEYWORD = SemanticTokenizer.TOKEN_TYPES.indexOf("keyword");
+    private static final int COMMENT = SemanticTokenizer.TOKEN_TYPES.indexOf("comment");
+    private static final int VARIABLE = SemanticTokenizer.TOKEN_TYPES.indexOf("variable");
+    private static final int FUNCTION = SemanticTokenizer.TOKEN_TYPES.indexOf("function");
+
+    @Test
+    public void testTokenize() {
+        String sql = "select a\nfrom t -- c";
+        int[] expected = {
+                0, 0, 6, KEYWORD, 0,
+                0, 7, 1, VARIABLE, 0,
+                1, 0, 4, KEYWORD, 0,
+                0, 5, 1, VARIABLE, 0,
+                0, 2, 4, COMMENT, 0,
+        };
+        assertArrayEquals(expected, SemanticTokenizer.tokenize(sql, LineIndex.of(sql)));
+    }
+
+    @Test
+    public void testFunctionCall() {
+        String sql = "count(x)";
+        int[] expected = {
+                0, 0, 5, FUNCTION, 0,
+                0, 6, 1, VARIABLE, 0,
+        };
+        assertArrayEquals(expected, SemanticTokenizer.tokenize(sql, LineIndex.of(sql)));
+    }
+
+    @Test
+    public void testMultiLineCommentIsSplitPerLine() {
+        String sql = "/* a\nbc */";
+        int[] expected = {
+                0, 0, 4, COMMENT, 0,
+                1, 0, 5, COMMENT, 0,
+        };
+        assertArrayEquals(expected, SemanticTokenizer.tokenize(sql, LineIndex.of(sql)));
+    }
+
+    @Test
+    public void testEdits() {
+        List<SemanticTokensEdit> edits = SemanticTokensRunner.edits(new int[] {1, 2, 3, 4, 5, 6}, new int[] {1, 2, 9, 9, 5, 6});
+        assertEquals(1, edits.size());
+        assertEquals(2, edits.get(0).getStart());
+        assertEquals(2, edits.get(0).getDeleteCount());
+        assertEquals(List.of(9, 9), edits.get(0).getData());
+
+        edits = SemanticTokensRunner.edits(new int[] {1, 2, 3}, new int[] {1, 2, 3, 1, 2, 3});
+        assertEquals(3, edits.get(0).getStart());
+        assertEquals(0, edits.get(0).getDeleteCount());
+        assertEquals(List.of(1, 2, 3), edits.get(0).getData());
+
+        assertTrue(SemanticTokensRunner.edits(new int[] {1, 2}, new int[] {1, 2}).isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package net.liamoneill.trinolsp;
+
+import io.trino.sql.parser.SqlBaseParser;
+import net.liamoneill.trinolsp.completion.CodeCompletionCore;
+import net.liamoneill.trinolsp.completion.SqlCompletion;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqlCompletionTest {
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "select * from ",
+            "select * from web.",
+            "select * from t join ",
+            "select * from t as a left join u on a.id = u.id cross join ",
+    })
+    public void testTablesAfterFromAndJoin(String sql) {
+        CodeCompletionCore.Candidates candidates = SqlCompletion.candidatesAfter(sql);
+        assertTrue(candidates.hasRuleWithin(SqlBaseParser.RULE_identifier, SqlBaseParser.RULE_relationPrimary));
+        assertFalse(candidates.hasRuleWithin(SqlBaseParser.RULE_identifier, SqlBaseParser.RULE_primaryExpression));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "select ",
+            "select a, ",
+            "select a from t where ",
+            "select a from t where x = 1 and ",
+            "select coalesce(a, ",
+            "select a from t group by ",
+    })
+    public void testColumnsAndFunctionsInExpressions(String sql) {
+        CodeCompletionCore.Candidates candidates = SqlCompletion.candidatesAfter(sql);
+        assertTrue(candidates.hasRuleWithin(SqlBaseParser.RULE_identifier, SqlBaseParser.RULE_primaryExpression));
+        assertFalse(candidates.hasRuleWithin(SqlBaseParser.RULE_identifier, SqlBaseParser.RULE_relationPrimary));
+    }
+
+    @Test
+    public void testKeywordsAtStatementStart() {
+        CodeCompletionCore.Candidates candidates = SqlCompletion.candidatesAfter("");
+        assertTrue(candidates.getTokens().contains(SqlBaseParser.SELECT));
+        assertTrue(candidates.getTokens().contains(SqlBaseParser.WITH));
+        assertTrue(candidates.getTokens().contains(SqlBaseParser.CREATE));
+        assertFalse(candidates.getTokens().contains(SqlBaseParser.FROM));
+    }
+
+    @Test
+    public void testKeywordsAfterSelect() {
+        CodeCompletionCore.Candidates candidates = SqlCompletion.candidatesAfter("select ");
+        assertTrue(candidates.getTokens().contains(SqlBaseParser.DISTINCT));
+        assertTrue(candidates.getTokens().contains(SqlBaseParser.CASE));
+        assertFalse(candidates.getTokens().contains(SqlBaseParser.SELECT));
+    }
+
+    @Test
+    public void testCaretDirectlyAfterSemicolon() {
+        CodeCompletionCore.Candidates afterSemicolon = SqlCompletion.candidatesAfter("select * from t;");
+        assertEquals(SqlCompletion.candidatesAfter("").getTokens(), afterSemicolon.getTokens());
+        assertTrue(afterSemicolon.getTokens().contains(SqlBaseParser.SELECT));
+        assertFalse(afterSemicolon.getTokens().contains(SqlBaseParser.WHERE));
+    }
+
+    @Test
+    public void testLeftRecursiveExpressions() {
+        // After a complete operand, any operator may follow: of the same precedence, a higher one, or a lower one
+        CodeCompletionCore.Candidates arithmetic = SqlCompletion.candidatesAfter("select a + b ");
+        assertTrue(arithmetic.getTokens().contains(SqlBaseParser.PLUS));
+        assertTrue(arithmetic.getTokens().contains(SqlBaseParser.ASTERISK));
+        assertTrue(arithmetic.getTokens().contains(SqlBaseParser.AND));
+        assertTrue(arithmetic.getTokens().contains(SqlBaseParser.FROM));
+
+        CodeCompletionCore.Candidates multiplication = SqlCompletion.candidatesAfter("select a * b ");
+        assertTrue(multiplication.getTokens().contains(SqlBaseParser.PLUS));
+        assertTrue(multiplication.getTokens().contains(SqlBaseParser.ASTERISK));
+
+        CodeCompletionCore.Candidates conjunction = SqlCompletion.candidatesAfter("select * from t where a = 1 and b = 2 ");
+        assertTrue(conjunction.getTokens().contains(SqlBaseParser.OR));
+        assertTrue(conjunction.getTokens().contains(SqlBaseParser.AND));
+        assertTrue(conjunction.getTokens().contains(SqlBaseParser.GROUP));
+        assertFalse(conjunction.getTokens().contains(SqlBaseParser.SELECT));
+    }
+}
@@ -0,0 +1,25 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.sql.SqlNormalizer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SqlNormalizerTest {
+    @Test
+    public void testCollapsesWhitespaceAndComments() {
+        assertEquals("select a, b from t where x = 1",
+                SqlNormalizer.normalize("  select a,\n\tb -- columns\nfrom t /* table */ where x = 1\n"));
+    }
+
+    @Test
+    public void testKeepsQuotedTextVerbatim() {
+        String sql = "select 'a  -- b', \"c  /* d */\", `e  f` from t";
+        assertEquals(sql, SqlNormalizer.normalize(sql));
+    }
+
+    @Test
+    public void testCommentSeparatesTokens() {
+        assertEquals("select a from t", SqlNormalizer.normalize("select/**/a from--x\nt"));
+    }
+}
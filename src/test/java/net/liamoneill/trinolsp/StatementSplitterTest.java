@@ -0,0 +1,33 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.sql.StatementSplitter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StatementSplitterTest {
+    @Test
+    public void testSplitsOnSemicolons() {
+        assertEquals(List.of("select 1", "select 2", "select 3"), split("select 1; select 2;\n\nselect 3"));
+    }
+
+    @Test
+    public void testIgnoresSemicolonsInLiteralsIdentifiersAndComments() {
+        String sql = "select 'a;''b' from \"t;\" -- c;\nwhere x = 1 /* ; */;select `q;`";
+        assertEquals(List.of("select 'a;''b' from \"t;\" -- c;\nwhere x = 1", "select `q;`"), split(sql));
+    }
+
+    @Test
+    public void testSkipsCommentsAndEmptyStatements() {
+        assertEquals(List.of("select 1"), split("-- header;\n;; select 1; /* trailer */"));
+    }
+
+    private static List<String> split(String sql) {
+        return StatementSplitter.split(sql).stream()
+                .map(range -> sql.substring(range.getStart(), range.getEnd()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,55 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.sql.Parser;
+import net.liamoneill.trinolsp.sql.SymbolIndex;
+import org.eclipse.lsp4j.DocumentSymbol;
+import org.eclipse.lsp4j.FoldingRange;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolKind;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SymbolIndexTest {
+    private static final String SCRIPT = "with r as (select * from events e) select * from r;\ncreate table t as\nselect 1 x;\n";
+
+    @Test
+    public void testDocumentSymbols() {
+        List<DocumentSymbol> symbols = SymbolIndex.of(Parser.parseScript(SCRIPT)).getDocumentSymbols();
+        assertEquals(2, symbols.size());
+
+        DocumentSymbol query = symbols.get(0);
+        assertEquals("with r as (select * from events e) select * from r", query.getName());
+        assertEquals(SymbolKind.Module, query.getKind());
+        assertEquals(2, query.getChildren().size());
+        assertEquals("r", query.getChildren().get(0).getName());
+        assertEquals(SymbolKind.Object, query.getChildren().get(0).getKind());
+        assertEquals(new Range(new Position(0, 5), new Position(0, 6)), query.getChildren().get(0).getSelectionRange());
+        assertEquals("e", query.getChildren().get(1).getName());
+        assertEquals("events", query.getChildren().get(1).getDetail());
+        assertEquals(new Range(new Position(0, 32), new Position(0, 33)), query.getChildren().get(1).getSelectionRange());
+
+        DocumentSymbol createTable = symbols.get(1);
+        assertEquals("CREATE TABLE t", createTable.getName());
+        assertEquals(SymbolKind.Class, createTable.getKind());
+        assertEquals(new Range(new Position(1, 0), new Position(2, 10)), createTable.getRange());
+    }
+
+    @Test
+    public void testStatementWithSyntaxErrorKeepsItsSymbols() {
+        List<DocumentSymbol> symbols = SymbolIndex.of(Parser.parseScript("select * from events e where")).getDocumentSymbols();
+        assertEquals(1, symbols.size());
+        assertEquals("e", symbols.get(0).getChildren().get(0).getName());
+    }
+
+    @Test
+    public void testFoldingRanges() {
+        List<FoldingRange> foldingRanges = SymbolIndex.of(Parser.parseScript(SCRIPT)).getFoldingRanges();
+        assertEquals(1, foldingRanges.size());
+        assertEquals(1, foldingRanges.get(0).getStartLine());
+        assertEquals(2, foldingRanges.get(0).getEndLine());
+    }
+}
@@ -0,0 +1,51 @@
+package net.liamoneill.trinolsp;
+
+import net.liamoneill.trinolsp.document.LineIndex;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextEdit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenAlignedEditsTest {
+    @Test
+    public void testReplacesOnlyChangedTokensAndWhitespace() {
+        List<TextEdit> edits = TokenAlignedEdits.compute("select  a from t", "SELECT\n  a\nFROM\n  t\n");
+        assertEquals(List.of(
+                new TextEdit(new Range(new Position(0, 0), new Position(0, 8)), "SELECT\n  "),
+                new TextEdit(new Range(new Position(0, 9), new Position(0, 15)), "\nFROM\n  "),
+                new TextEdit(new Range(new Position(0, 16), new Position(0, 16)), "\n")), edits);
+    }
+
+    @Test
+    public void testFormattedTextIsUnchanged() {
+        assertEquals(List.of(), TokenAlignedEdits.compute("SELECT a\nFROM\n  t\n", "SELECT a\nFROM\n  t\n"));
+    }
+
+    @Test
+    public void testAddedTokensFallBackToDiff() {
+        String original = "select a b from t";
+        String formatted = "SELECT a AS b\nFROM\n  t\n";
+        assertEquals(formatted, apply(original, TokenAlignedEdits.compute(original, formatted)));
+    }
+
+    @Test
+    public void testSurrogatePairs() {
+        String original = "select '😀'  ,  a";
+        String formatted = "SELECT '😀', a";
+        assertEquals(formatted, apply(original, TokenAlignedEdits.compute(original, formatted)));
+    }
+
+    private static String apply(String text, List<TextEdit> edits) {
+        LineIndex lineIndex = LineIndex.of(text);
+        StringBuilder builder = new StringBuilder(text);
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            Range range = edits.get(i).getRange();
+            builder.replace(lineIndex.offsetAt(range.getStart()), lineIndex.offsetAt(range.getEnd()), edits.get(i).getNewText());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package net.liamoneill.trinolsp.http;
+
+import com.google.common.cache.Cache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lives in the http package to give the endpoint its own cache, so that the tests do not depend on each other or on
+ * the size of the shared one.
+ */
+public class RewriteCacheTest {
+    @Test
+    public void testInputsDifferingInLayoutShareAnEntry() {
+        Cache<String, String> cache = RewriteEndpoint.newCache(1 << 20, 600);
+        RewriteEndpoint endpoint = new RewriteEndpoint(cache);
+
+        RewriteEndpoint.Response first = endpoint.rewrite(new RewriteEndpoint.Request("select a, b from t where x = 1"));
+        RewriteEndpoint.Response second = endpoint.rewrite(new RewriteEndpoint.Request("select a,  b -- columns\nfrom /* table */ t\nwhere x = 1"));
+
+        assertEquals(first.getSql(), second.getSql());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.stats().hitCount());
+    }
+
+    @Test
+    public void testFailedRewritesAreNotCached() {
+        Cache<String, String> cache = RewriteEndpoint.newCache(1 << 20, 600);
+        RewriteEndpoint endpoint = new RewriteEndpoint(cache);
+
+        RewriteEndpoint.Response response = endpoint.rewrite(new RewriteEndpoint.Request("select a from t where"));
+        assertNull(response.getSql());
+        assertNotNull(response.getErrorMessage());
+        assertEquals(0, cache.size());
+
+        // The error is reported again, not served from the cache
+        assertEquals(response.getErrorMessage(), endpoint.rewrite(new RewriteEndpoint.Request("select a from t where")).getErrorMessage());
+        assertEquals(0, cache.stats().hitCount());
+    }
+
+    @Test
+    public void testCacheIsBoundedByCharacters() {
+        long maxCharacters = 1_000;
+        Cache<String, String> cache = RewriteEndpoint.newCache(maxCharacters, 600);
+        RewriteEndpoint endpoint = new RewriteEndpoint(cache);
+
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(endpoint.rewrite(new RewriteEndpoint.Request("select a" + i + " from t" + i)).getSql());
+        }
+
+        long characters = cache.asMap().entrySet().stream()
+                .mapToLong(entry -> entry.getKey().length() + entry.getValue().length())
+                .sum();
+        assertTrue(characters <= maxCharacters, characters + " characters cached");
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.stats().evictionCount() > 0);
+    }
+}
@@ -0,0 +1,33 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.Statement;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lives in the sql package to reach {@link Formatter#verify}, so that a re-parse timing out can be simulated.
+ */
+public class FormatterVerificationTest {
+    private static final Statement STATEMENT = Parser.parse("SELECT a FROM t").getLeft();
+
+    @Test
+    public void testVerificationIsSkippedWhenReparseTimesOut() {
+        assertFalse(Formatter.verify(STATEMENT, Either.forRight(new ParseTimeoutException(1))));
+    }
+
+    @Test
+    public void testVerificationFailsOnSyntaxError() {
+        assertThrows(IllegalStateException.class, () -> Formatter.verify(STATEMENT, Either.forRight(new ParsingException("mismatched input"))));
+    }
+
+    @Test
+    public void testVerificationChecksTheTree() {
+        assertTrue(Formatter.verify(STATEMENT, Parser.parse("SELECT a\nFROM\n  t")));
+        assertThrows(IllegalStateException.class, () -> Formatter.verify(STATEMENT, Parser.parse("SELECT b FROM t")));
+    }
+}
@@ -0,0 +1,87 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.Statement;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lives in the sql package to reach {@link Parser#parseTwoStage}, so that an SLL failure on a valid statement can be
+ * simulated whatever the grammar does.
+ */
+public class ParserPredictionTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Test
+    public void testStatementRejectedBySllParsesWithLl() {
+        String sql = "SELECT transform(a, (x) -> x + 1) FROM t";
+        Either<Statement, ParsingException> result = Parser.parseTwoStage(
+                () -> Either.forRight(new ParsingException("SLL prediction failed")),
+                () -> Parser.parse(sql, Parser.PredictionStrategy.LL, TIMEOUT_MILLIS));
+        assertTrue(result.isLeft());
+        assertEquals(Parser.parse(sql, Parser.PredictionStrategy.LL, TIMEOUT_MILLIS).getLeft(), result.getLeft());
+    }
+
+    @Test
+    public void testSllTimeoutIsNotRetried() {
+        AtomicBoolean llCalled = new AtomicBoolean();
+        ParseTimeoutException timeout = new ParseTimeoutException(1);
+        Either<Statement, ParsingException> result = Parser.parseTwoStage(
+                () -> Either.forRight(timeout),
+                () -> {
+                    llCalled.set(true);
+                    return Parser.parse("SELECT 1", Parser.PredictionStrategy.LL, TIMEOUT_MILLIS);
+                });
+        assertSame(timeout, result.getRight());
+        assertFalse(llCalled.get());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT transform(a, (x) -> x + 1), filter(b, x -> x > 0) FROM t",
+            "SELECT (a, b) IN (VALUES (1, 2), (3, 4)) FROM t",
+            "SELECT ((((a)))) + (b) FROM (((SELECT 1 a, 2 b)))",
+            "SELECT CAST(ROW(1, 'a') AS ROW(x integer, y varchar)).x",
+            "SELECT * FROM (t1 CROSS JOIN t2) JOIN (t3) ON true",
+            "WITH a AS (SELECT 1), b (x) AS (SELECT * FROM a) SELECT x FROM b",
+            "SELECT * FROM t WHERE (a, b) = (1, 2) AND a BETWEEN 1 AND 2 OR b IS NOT NULL",
+    })
+    public void testTwoStageParsesLikeLl(String sql) {
+        Either<Statement, ParsingException> ll = Parser.parse(sql, Parser.PredictionStrategy.LL, TIMEOUT_MILLIS);
+        assertTrue(ll.isLeft(), sql);
+        assertEquals(ll.getLeft(), Parser.parse(sql, Parser.PredictionStrategy.TWO_STAGE, TIMEOUT_MILLIS).getLeft());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "SELECT * FROM t WHERE",
+            "SELECT a FROM t\nWHERE x = = 1",
+            "SELECT transform(a, (x) -> ) FROM t",
+            "SELECT (a, b IN (1, 2) FROM t",
+            "SELECT * FROM t1 JOIN t2 ON",
+    })
+    public void testSyntaxErrorsAreReportedLikeLl(String sql) {
+        ParsingException ll = Parser.parse(sql, Parser.PredictionStrategy.LL, TIMEOUT_MILLIS).getRight();
+        ParsingException twoStage = Parser.parse(sql, Parser.PredictionStrategy.TWO_STAGE, TIMEOUT_MILLIS).getRight();
+        assertEquals(ll.getLineNumber(), twoStage.getLineNumber());
+        assertEquals(ll.getColumnNumber(), twoStage.getColumnNumber());
+        assertEquals(ll.getErrorMessage(), twoStage.getErrorMessage());
+    }
+
+    @Test
+    public void testSyntaxErrorPosition() {
+        ParsingException error = Parser.parse("SELECT a FROM t\nWHERE x = = 1", Parser.PredictionStrategy.TWO_STAGE, TIMEOUT_MILLIS).getRight();
+        assertEquals(2, error.getLineNumber());
+        assertEquals(11, error.getColumnNumber());
+        assertTrue(error.getErrorMessage().startsWith("mismatched input '='"), error.getErrorMessage());
+    }
+}
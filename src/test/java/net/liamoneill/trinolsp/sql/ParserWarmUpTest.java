@@ -0,0 +1,54 @@
+package net.liamoneill.trinolsp.sql;
+
+import io.trino.sql.parser.ParsingException;
+import io.trino.sql.tree.Statement;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lives in the sql package to reach the warm-up corpus and to clear the DFA cache with a limit of its own, as
+ * {@code trinolsp.parser.maxDfaStates} is read once per process.
+ */
+public class ParserWarmUpTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Test
+    public void testWarmUpStatementsParse() {
+        String corpus = Parser.loadWarmUpCorpus();
+        List<StatementSplitter.StatementRange> ranges = StatementSplitter.split(corpus);
+        assertFalse(ranges.isEmpty());
+        for (StatementSplitter.StatementRange range : ranges) {
+            String sql = corpus.substring(range.getStart(), range.getEnd());
+            Either<Statement, ParsingException> result = Parser.parse(sql, Parser.PredictionStrategy.LL, TIMEOUT_MILLIS);
+            assertTrue(result.isLeft(), () -> sql + ": " + result.getRight().getMessage());
+        }
+
+        assertEquals(0, Parser.warmUp());
+        assertTrue(Parser.getStats().getWarmUpMillis() >= 0);
+    }
+
+    @Test
+    public void testDfaCacheIsClearedPastItsLimit() {
+        Parser.parse("SELECT a, count(*) FROM t WHERE b > 1 GROUP BY a", TIMEOUT_MILLIS);
+        int states = Parser.getStats().getDfaStates();
+        assertTrue(states > 0);
+        long clears = Parser.getStats().getDfaClears();
+
+        assertFalse(Parser.clearDfaCacheIfLarger(states));
+        assertEquals(clears, Parser.getStats().getDfaClears());
+
+        assertTrue(Parser.clearDfaCacheIfLarger(states - 1));
+        assertEquals(0, Parser.getStats().getDfaStates());
+        assertEquals(clears + 1, Parser.getStats().getDfaClears());
+
+        // The empty cache is used and filled by the next parses
+        assertTrue(Parser.parse("SELECT a FROM t", TIMEOUT_MILLIS).isLeft());
+        assertTrue(Parser.getStats().getDfaStates() > 0);
+    }
+}
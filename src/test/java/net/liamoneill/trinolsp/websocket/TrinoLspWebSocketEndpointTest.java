@@ -0,0 +1,32 @@
+package net.liamoneill.trinolsp.websocket;
+
+import net.liamoneill.trinolsp.AnalysisEngine;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TrinoLspWebSocketEndpointTest {
+    @Test
+    public void testConnectionsShareOneEngine() {
+        TrinoLspWebSocketEndpoint first = new TrinoLspWebSocketEndpoint();
+        TrinoLspWebSocketEndpoint second = new TrinoLspWebSocketEndpoint();
+        int activeSessions = AnalysisEngine.getShared().getActiveSessions();
+        first.configure(new Launcher.Builder<LanguageClient>());
+        second.configure(new Launcher.Builder<LanguageClient>());
+        try {
+            assertNotSame(first.getLanguageServer(), second.getLanguageServer());
+            assertSame(AnalysisEngine.getShared(), first.getLanguageServer().getAnalysisEngine());
+            assertSame(AnalysisEngine.getShared(), second.getLanguageServer().getAnalysisEngine());
+            assertEquals(activeSessions + 2, AnalysisEngine.getShared().getActiveSessions());
+        }
+        finally {
+            first.onClose(null, null);
+            second.onClose(null, null);
+        }
+        assertEquals(activeSessions, AnalysisEngine.getShared().getActiveSessions());
+    }
+}